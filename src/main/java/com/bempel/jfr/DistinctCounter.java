@@ -0,0 +1,109 @@
+package com.bempel.jfr;
+
+/**
+ * Counts distinct 64 bit hashes.
+ */
+abstract class DistinctCounter {
+
+    abstract void add(long hash);
+
+    abstract long count();
+
+    static DistinctCounter exact() {
+        return new Exact();
+    }
+
+    static DistinctCounter approximate() {
+        return new HyperLogLog();
+    }
+
+    /**
+     * Open addressing set of hashes, linear probing. 0 marks a free slot, so
+     * the hash 0 is tracked on the side.
+     */
+    static final class Exact extends DistinctCounter {
+        private long[] table = new long[1024];
+        private int size;
+        private boolean hasZero;
+
+        @Override
+        void add(long hash) {
+            if (hash == 0) {
+                hasZero = true;
+                return;
+            }
+            if (insert(table, hash)) {
+                size++;
+                // keep the table at most half full
+                if (2 * size > table.length) {
+                    long[] larger = new long[2 * table.length];
+                    for (long h : table) {
+                        if (h != 0) {
+                            insert(larger, h);
+                        }
+                    }
+                    table = larger;
+                }
+            }
+        }
+
+        private static boolean insert(long[] table, long hash) {
+            int mask = table.length - 1;
+            // hashes are already mixed, the low bits are as good as any
+            int slot = (int) hash & mask;
+            while (table[slot] != 0) {
+                if (table[slot] == hash) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = hash;
+            return true;
+        }
+
+        @Override
+        long count() {
+            return size + (hasZero ? 1 : 0);
+        }
+    }
+
+    /**
+     * HyperLogLog estimate in 16 KB, with a standard error of about 0.8%.
+     */
+    static final class HyperLogLog extends DistinctCounter {
+        private static final int PRECISION = 14;
+        private static final int REGISTER_COUNT = 1 << PRECISION;
+        private final byte[] registers = new byte[REGISTER_COUNT];
+
+        @Override
+        void add(long hash) {
+            int index = (int) (hash >>> (64 - PRECISION));
+            // rank of the first 1 bit in the remaining bits, the sentinel bit
+            // bounds it for a hash whose remaining bits are all zeros
+            long rest = (hash << PRECISION) | (1L << (PRECISION - 1));
+            byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+            if (rank > registers[index]) {
+                registers[index] = rank;
+            }
+        }
+
+        @Override
+        long count() {
+            double sum = 0;
+            int zeros = 0;
+            for (byte r : registers) {
+                sum += 1.0 / (1L << r);
+                if (r == 0) {
+                    zeros++;
+                }
+            }
+            double alpha = 0.7213 / (1 + 1.079 / REGISTER_COUNT);
+            double estimate = alpha * REGISTER_COUNT * REGISTER_COUNT / sum;
+            if (estimate <= 2.5 * REGISTER_COUNT && zeros > 0) {
+                // small range correction, linear counting
+                estimate = REGISTER_COUNT * Math.log((double) REGISTER_COUNT / zeros);
+            }
+            return Math.round(estimate);
+        }
+    }
+}
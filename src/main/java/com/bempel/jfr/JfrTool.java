@@ -4,9 +4,14 @@ import static org.openjdk.jmc.common.item.Attribute.attr;
 import static org.openjdk.jmc.common.item.ItemToolkit.accessor;
 import static org.openjdk.jmc.flightrecorder.JfrAttributes.EVENT_STACKTRACE;
 
+import com.bempel.jfr.jdk.ChunkInfo;
 import com.bempel.jfr.jdk.ChunkParser;
+import com.bempel.jfr.jdk.ChunkSummary;
 import com.bempel.jfr.jdk.ConstantMap;
+import com.bempel.jfr.jdk.EventTypeSummary;
 import com.bempel.jfr.jdk.LongMap;
+import com.bempel.jfr.jdk.ParserConfiguration;
+import com.bempel.jfr.jdk.ParserProfile;
 import com.bempel.jfr.jdk.RecordingFile;
 import org.openjdk.jmc.common.IDisplayable;
 import org.openjdk.jmc.common.IMCFrame;
@@ -37,14 +42,12 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.stream.Collectors;
 
-@CommandLine.Command(subcommands = {Stats.class, Dump.class, FlameGraph.class, GC.class},
+@CommandLine.Command(subcommands = {Stats.class, Dump.class, Chunks.class, Summary.class, FlameGraph.class, GC.class},
         mixinStandardHelpOptions = true, version = "1.0")
 public class JfrTool {
 
@@ -60,38 +63,51 @@ class Stats implements Callable<Integer> {
     @CommandLine.Parameters(paramLabel = "JfrFile", description = "JFR file")
     String jfrFileName;
 
+    @CommandLine.Option(names = {"-p", "--parallelism"}, paramLabel = "THREADS", description = "number of chunks parsed concurrently")
+    int parallelism = 1;
+
+    @CommandLine.Option(names = {"-a", "--approximate"}, description = "estimates distinct counts with HyperLogLog instead of exact sets")
+    boolean approximate;
+
+    @CommandLine.Option(names = {"--profile"}, description = "prints time, bytes read and bytes allocated per parsing phase as JSON on stderr")
+    boolean profile;
+
     @Override
     public Integer call() throws Exception {
-        RecordingFile recordingFile = new RecordingFile(Paths.get(jfrFileName));
-        // force to load all chunks
-        while (recordingFile.hasMoreEvents()) {
-            recordingFile.readEvent();
-        }
-        List<ChunkParser> chunks = recordingFile.getChunks();
+        ParserConfiguration configuration = new ParserConfiguration();
+        configuration.setParallelism(parallelism);
+        configuration.setConstantPoolsOnly(true);
+        // entries are counted by content hash, they don't need to be decoded
+        configuration.setLazyConstantPools(true);
+        configuration.setContentHashes(true);
+        // pools are aggregated as chunks are read, chunks don't need to be kept
+        configuration.setRetainedChunks(0);
+        ParserProfile parserProfile = profile ? new ParserProfile() : null;
+        configuration.setProfile(parserProfile);
+        RecordingFile recordingFile = new RecordingFile(Paths.get(jfrFileName), configuration);
         Map<String, PoolStats> poolStatsMap = new HashMap<>();
-        for (ChunkParser chunk : chunks) {
+        while (recordingFile.hasMoreChunks()) {
+            ChunkParser chunk = recordingFile.readChunk();
             for (Map.Entry<Long, ConstantMap> entry : chunk.getConstantPools().entrySet()) {
                 ConstantMap constantMap = entry.getValue();
-                int count = constantMap.size();
-
-                Set<Object> duplicates = new HashSet<>();
-                for (Map.Entry<Long, Object> e : constantMap.entrySet()) {
-                    Object o = e.getValue();
-                    duplicates.add(o);
-                }
+                long[] hashes = chunk.getContentHashes(entry.getKey());
                 PoolStats poolStats = poolStatsMap.get(constantMap.getName());
                 Long refPoolSize = chunk.getPoolSizes().get(constantMap.getName());
                 long poolSize = refPoolSize != null ? refPoolSize : 0;
                 if (poolStats == null) {
-                    poolStats = new PoolStats(entry.getKey(), entry.getValue(), count, duplicates.size(), poolSize);
+                    DistinctCounter distinct = approximate ? DistinctCounter.approximate() : DistinctCounter.exact();
+                    poolStats = new PoolStats(entry.getKey(), constantMap.getName(), distinct);
                     poolStatsMap.put(constantMap.getName(), poolStats);
-                } else {
-                    poolStats.count += count;
-                    poolStats.distinctCount += duplicates.size();
-                    poolStats.size += poolSize;
+                }
+                poolStats.count += hashes.length;
+                poolStats.size += poolSize;
+                for (long hash : hashes) {
+                    poolStats.distinct.add(hash);
                 }
             }
         }
+        long outputNanos = System.nanoTime();
+        long outputAllocated = parserProfile != null ? parserProfile.allocatedBytes() : 0;
         System.out.println("Constant pool name size(B) count distinct");
         List<PoolStats> statsList = poolStatsMap.values().stream()
                 .sorted(Comparator.<PoolStats>comparingInt(poolStats -> poolStats.count).reversed())
@@ -99,13 +115,18 @@ class Stats implements Callable<Integer> {
         long poolTotalSize = 0;
         for (PoolStats stats : statsList) {
             String distinctStr = "";
-            if (stats.count != stats.distinctCount) {
-                distinctStr = String.valueOf(stats.distinctCount);
+            long distinctCount = stats.distinct.count();
+            if (stats.count != distinctCount) {
+                distinctStr = String.format("%,d", distinctCount);
             }
             poolTotalSize += stats.size;
-            System.out.printf("%s %,d %,d %s\n", stats.map.getName(), stats.size, stats.count, distinctStr);
+            System.out.printf("%s %,d %,d %s\n", stats.name, stats.size, stats.count, distinctStr);
         }
         System.out.printf("Total pools size: %,d\n", poolTotalSize);
+        if (parserProfile != null) {
+            parserProfile.record(ParserProfile.Phase.OUTPUT, outputNanos, outputAllocated, 0);
+            System.err.println(parserProfile.toJson());
+        }
         return 0;
     }
 }
@@ -117,24 +138,97 @@ class Dump implements Callable<Integer> {
     @CommandLine.Parameters(paramLabel = "JfrFileName", description = "JFR file")
     String jfrFileName;
 
+    @CommandLine.Option(names = {"-p", "--parallelism"}, paramLabel = "THREADS", description = "number of chunks parsed concurrently")
+    int parallelism = 1;
+
+    @CommandLine.Option(names = {"--off-heap"}, description = "keeps constant pool entries encoded off heap, referenced entries are decoded again for every dumped entry")
+    boolean offHeap;
+
+    @CommandLine.Option(names = {"--profile"}, description = "prints time, bytes read and bytes allocated per parsing phase as JSON on stderr")
+    boolean profile;
+
     @Override
     public Integer call() throws Exception {
-        RecordingFile recordingFile = new RecordingFile(Paths.get(jfrFileName));
-        // force to load all chunks
-        while (recordingFile.hasMoreEvents()) {
-            recordingFile.readEvent();
-        }
-        List<ChunkParser> chunks = recordingFile.getChunks();
-        for (ChunkParser chunk : chunks) {
-            for (Map.Entry<Long, ConstantMap> entryMap : chunk.getConstantPools().entrySet()) {
-                ConstantMap map = entryMap.getValue();
+        ParserConfiguration configuration = new ParserConfiguration();
+        configuration.setParallelism(parallelism);
+        configuration.setConstantPoolsOnly(true);
+        // other pools are skipped, or only indexed when the dumped entries
+        // reference them
+        configuration.setAcceptedConstantPools(Collections.singleton(constantPoolName));
+        configuration.setLazyConstantPools(true);
+        configuration.setOffHeapConstantPools(offHeap);
+        configuration.setRetainedChunks(0);
+        ParserProfile parserProfile = profile ? new ParserProfile() : null;
+        configuration.setProfile(parserProfile);
+        RecordingFile recordingFile = new RecordingFile(Paths.get(jfrFileName), configuration);
+        while (recordingFile.hasMoreChunks()) {
+            ChunkParser chunk = recordingFile.readChunk();
+            // lazy entries are decoded as they are printed
+            long outputNanos = System.nanoTime();
+            long outputAllocated = parserProfile != null ? parserProfile.allocatedBytes() : 0;
+            for (ConstantMap map : chunk.getConstantPools()) {
                 if (constantPoolName.equals(map.getName())) {
-                    for (Map.Entry<Long, Object> entry : map.entrySet()) {
-                        System.out.printf("%s\n", entry.getValue());
-                    }
+                    map.forEachValue(value -> System.out.printf("%s\n", value));
                 }
             }
+            if (parserProfile != null) {
+                parserProfile.record(ParserProfile.Phase.OUTPUT, outputNanos, outputAllocated, 0);
+            }
+        }
+        if (parserProfile != null) {
+            System.err.println(parserProfile.toJson());
+        }
+        return 0;
+    }
+}
+
+@CommandLine.Command(name = "chunks", description = "Lists chunks with their position and time span")
+class Chunks implements Callable<Integer> {
+    @CommandLine.Parameters(paramLabel = "JfrFile", description = "JFR file")
+    String jfrFileName;
+
+    @Override
+    public Integer call() throws Exception {
+        List<ChunkInfo> chunks = RecordingFile.readChunkDirectory(Paths.get(jfrFileName));
+        System.out.println("Chunk offset size(B) start end duration(ms) constantPoolOffset metadataOffset");
+        for (ChunkInfo chunk : chunks) {
+            System.out.printf("%d %,d %,d %s %s %,d %,d %,d\n", chunk.getIndex(), chunk.getStartPosition(), chunk.getSize(),
+                    chunk.getStartTime(), chunk.getEndTime(), chunk.getDuration().toMillis(),
+                    chunk.getConstantPoolOffset(), chunk.getMetadataOffset());
+        }
+        System.out.printf("Total chunks: %d\n", chunks.size());
+        return 0;
+    }
+}
+
+@CommandLine.Command(name = "summary", description = "Displays count and size of events per event type, reading only event headers")
+class Summary implements Callable<Integer> {
+    @CommandLine.Parameters(paramLabel = "JfrFile", description = "JFR file")
+    String jfrFileName;
+
+    @Override
+    public Integer call() throws Exception {
+        List<ChunkSummary> summaries = RecordingFile.readSummary(Paths.get(jfrFileName));
+        // by event type name, count and bytes of all chunks
+        Map<String, long[]> totals = new HashMap<>();
+        for (ChunkSummary summary : summaries) {
+            ChunkInfo chunk = summary.getChunk();
+            System.out.printf("Chunk %d offset %,d size(B) %,d\n", chunk.getIndex(), chunk.getStartPosition(), chunk.getSize());
+            System.out.println("Event type count size(B) average(B)");
+            for (EventTypeSummary type : summary.getEventTypes()) {
+                System.out.printf("%s %,d %,d %,d\n", type.getName(), type.getCount(), type.getSize(), type.getAverageSize());
+                long[] total = totals.computeIfAbsent(type.getName(), k -> new long[2]);
+                total[0] += type.getCount();
+                total[1] += type.getSize();
+            }
+            System.out.println();
         }
+        System.out.println("All chunks");
+        System.out.println("Event type count size(B) average(B)");
+        totals.entrySet().stream()
+                .sorted((e1, e2) -> Long.compare(e2.getValue()[1], e1.getValue()[1]))
+                .forEach(e -> System.out.printf("%s %,d %,d %,d\n", e.getKey(), e.getValue()[0], e.getValue()[1], e.getValue()[1] / e.getValue()[0]));
+        System.out.printf("Total chunks: %d\n", summaries.size());
         return 0;
     }
 }
@@ -366,17 +460,18 @@ class GC implements Callable<Integer> {
 }
 
 class PoolStats {
-    Long id;
-    ConstantMap map;
+    // only the name and id of the pool, the pools of a chunk are released
+    // once it is counted
+    long id;
+    String name;
     int count;
-    int distinctCount;
+    // across all chunks, by content
+    DistinctCounter distinct;
     long size;
 
-    public PoolStats(Long id, ConstantMap map, int count, int distinctCount, long size) {
+    public PoolStats(long id, String name, DistinctCounter distinct) {
         this.id = id;
-        this.map = map;
-        this.count = count;
-        this.distinctCount = distinctCount;
-        this.size = size;
+        this.name = name;
+        this.distinct = distinct;
     }
 }
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2016, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+
+package com.bempel.jfr.jdk;
+
+import jdk.jfr.EventType;
+import jdk.jfr.ValueDescriptor;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Base class of the accessors returned by {@link RecordingFile}.
+ * <p>
+ * The field is looked up by name once per metadata. Events read with the
+ * same metadata share the {@link FieldIndex} of their type, so as long as
+ * events come from chunks with the same metadata an access only compares the
+ * index of the event with the one the slots were resolved for.
+ */
+abstract class AbstractFieldAccessor {
+    private final String eventName;
+    final String path;
+    // slots for the metadata of the last event, replaced as a whole so it
+    // can be shared by threads
+    private Resolution resolution;
+
+    AbstractFieldAccessor(EventType eventType, String path) {
+        this.eventName = eventType.getName();
+        this.path = Objects.requireNonNull(path);
+        ValueDescriptor field = field(eventType.getFields(), path);
+        if (field == null) {
+            throw new IllegalArgumentException("Could not find field with name " + path + " in " + eventName);
+        }
+        validate(field);
+    }
+
+    // Returns the field at the end of a dotted path, or null
+    private static ValueDescriptor field(List<ValueDescriptor> fields, String path) {
+        ValueDescriptor field = null;
+        int start = 0;
+        while (start <= path.length()) {
+            int dotIndex = path.indexOf('.', start);
+            String name = path.substring(start, dotIndex < 0 ? path.length() : dotIndex);
+            field = null;
+            for (ValueDescriptor v : fields) {
+                if (v.getName().equals(name)) {
+                    field = v;
+                    break;
+                }
+            }
+            if (field == null || dotIndex < 0) {
+                return field;
+            }
+            fields = field.getFields();
+            start = dotIndex + 1;
+        }
+        return null;
+    }
+
+    /**
+     * Checks that the value of a field can be read by this accessor.
+     *
+     * @param field the field
+     * @throws IllegalArgumentException if the field has another type
+     */
+    void validate(ValueDescriptor field) {
+    }
+
+    /**
+     * Returns whether a primitive value can be read from the event without
+     * going through {@link RecordedObject}.
+     *
+     * @param kind kind of the value, see {@link ValueLayout}
+     */
+    boolean isDirect(int kind) {
+        return false;
+    }
+
+    final Resolution resolve(RecordedEvent event) {
+        Resolution r = resolution;
+        FieldIndex fieldIndex = event.getFieldIndex();
+        if (r == null || r.fieldIndex != fieldIndex) {
+            r = new Resolution(fieldIndex, event.getLayout());
+            resolution = r;
+        }
+        return r;
+    }
+
+    /**
+     * Returns the name of the event type of this accessor.
+     *
+     * @return the event type name, not {@code null}
+     */
+    public final String getEventName() {
+        return eventName;
+    }
+
+    /**
+     * Returns the name of the field, dot {@code "."} delimited for a nested
+     * field.
+     *
+     * @return the field name, not {@code null}
+     */
+    public final String getPath() {
+        return path;
+    }
+
+    final class Resolution {
+        final FieldIndex fieldIndex;
+        // indexes of the fields to follow, null to look the field up by name
+        final int[] slots;
+        // layout entry of a value that is read directly, -1 otherwise
+        final int entry;
+
+        Resolution(FieldIndex fieldIndex, ValueLayout layout) {
+            this.fieldIndex = fieldIndex;
+            int index = fieldIndex.indexOf(path);
+            if (index >= 0) {
+                this.slots = new int[] { index };
+                int e = layout != null ? layout.entry(index) : -1;
+                this.entry = e != -1 && ValueLayout.isPrimitive(e) && isDirect(ValueLayout.kind(e)) ? e : -1;
+            } else {
+                // fields of projected events, arrays and recursive types are
+                // looked up by name
+                this.slots = path.indexOf('.') > 0 ? fieldIndex.path(path) : null;
+                this.entry = -1;
+            }
+        }
+    }
+}
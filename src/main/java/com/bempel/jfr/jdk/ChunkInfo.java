@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2016, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.bempel.jfr.jdk;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Location and time span of a chunk, as written in its header.
+ * <p>
+ * Reading the chunk directory only reads the fixed size header of each chunk,
+ * neither the metadata nor the constant pools are parsed, so it stays cheap
+ * for multi-gigabyte recordings.
+ */
+public final class ChunkInfo {
+    static final int HEADER_SIZE = 68;
+    private static final byte[] FILE_MAGIC = { 'F', 'L', 'R', '\0' };
+
+    private final int index;
+    private final long startPosition;
+    private final short major;
+    private final short minor;
+    private final long size;
+    private final long constantPoolOffset;
+    private final long metadataOffset;
+    private final long startNanos;
+    private final long durationNanos;
+    private final long startTicks;
+    private final long ticksPerSecond;
+
+    private ChunkInfo(int index, long startPosition, ByteBuffer header, long fileSize) throws IOException {
+        for (byte c : FILE_MAGIC) {
+            if (header.get() != c) {
+                throw new IOException("Not a Flight Recorder file, no chunk magic at position " + startPosition);
+            }
+        }
+        this.index = index;
+        this.startPosition = startPosition;
+        this.major = header.getShort();
+        this.minor = header.getShort();
+        if (major != 1 && major != 2) {
+            throw new IOException("File version " + major + "." + minor + ". Only Flight Recorder files of version 1.x and 2.x can be read.");
+        }
+        this.size = header.getLong();
+        this.constantPoolOffset = header.getLong();
+        this.metadataOffset = header.getLong();
+        this.startNanos = header.getLong();
+        this.durationNanos = header.getLong();
+        this.startTicks = header.getLong();
+        this.ticksPerSecond = header.getLong();
+        if (size < HEADER_SIZE || startPosition + size > fileSize) {
+            throw new IOException("Chunk at position " + startPosition + " has size " + size + ", but file is only " + fileSize + " bytes");
+        }
+    }
+
+    /**
+     * Reads the header of every chunk in a recording file.
+     *
+     * @param channel channel of the recording file
+     * @return the chunks, in file order
+     * @throws IOException if a header is not valid, or an I/O error occurred
+     */
+    static List<ChunkInfo> readAll(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        if (fileSize < HEADER_SIZE) {
+            throw new IOException("Not a valid Flight Recorder file. File length is only " + fileSize + " bytes.");
+        }
+        List<ChunkInfo> chunks = new ArrayList<>();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        long position = 0;
+        while (position < fileSize) {
+            header.clear();
+            while (header.hasRemaining()) {
+                if (channel.read(header, position + header.position()) < 0) {
+                    throw new EOFException("Chunk header at position " + position + " is truncated");
+                }
+            }
+            header.flip();
+            ChunkInfo chunk = new ChunkInfo(chunks.size(), position, header, fileSize);
+            chunks.add(chunk);
+            position += chunk.size;
+        }
+        return chunks;
+    }
+
+    /**
+     * Returns the index of the chunk in the file, starting at 0.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the position of the chunk in the file.
+     */
+    public long getStartPosition() {
+        return startPosition;
+    }
+
+    /**
+     * Returns the position after the last byte of the chunk.
+     */
+    public long getEndPosition() {
+        return startPosition + size;
+    }
+
+    /**
+     * Returns the size of the chunk in bytes, header included.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the offset of the last constant pool checkpoint, relative to the
+     * start of the chunk.
+     */
+    public long getConstantPoolOffset() {
+        return constantPoolOffset;
+    }
+
+    /**
+     * Returns the offset of the metadata event, relative to the start of the
+     * chunk.
+     */
+    public long getMetadataOffset() {
+        return metadataOffset;
+    }
+
+    public Instant getStartTime() {
+        return Instant.ofEpochSecond(0, startNanos);
+    }
+
+    public Instant getEndTime() {
+        return Instant.ofEpochSecond(0, startNanos + durationNanos);
+    }
+
+    public Duration getDuration() {
+        return Duration.ofNanos(durationNanos);
+    }
+
+    public long getStartTicks() {
+        return startTicks;
+    }
+
+    public long getTicksPerSecond() {
+        return ticksPerSecond;
+    }
+
+    public short getMajor() {
+        return major;
+    }
+
+    public short getMinor() {
+        return minor;
+    }
+
+    @Override
+    public String toString() {
+        return "Chunk " + index + " [" + startPosition + ", " + getEndPosition() + "] " + getStartTime() + " - " + getEndTime();
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2016, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.bempel.jfr.jdk;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads a chunk from a read-only memory mapping of the recording file.
+ * <p>
+ * Positions are absolute file offsets, like with
+ * {@link jdk.jfr.internal.consumer.RecordingInput}, but every read is served
+ * from the mapping, so moving back and forth between the checkpoint chain and
+ * the event section does not involve any system call.
+ * <p>
+ * The input also carries the constant pools and time converter of the chunk,
+ * for parsers that are shared between chunks, and the resolver of the
+ * references between entries while the constant pools are filled.
+ */
+final class ChunkInput {
+
+    static final byte STRING_ENCODING_NULL = 0;
+    static final byte STRING_ENCODING_EMPTY_STRING = 1;
+    static final byte STRING_ENCODING_CONSTANT_POOL = 2;
+    static final byte STRING_ENCODING_UTF8_BYTE_ARRAY = 3;
+    static final byte STRING_ENCODING_CHAR_ARRAY = 4;
+    static final byte STRING_ENCODING_LATIN1_BYTE_ARRAY = 5;
+
+    private final static Charset UTF8 = StandardCharsets.UTF_8;
+    private final static Charset LATIN1 = StandardCharsets.ISO_8859_1;
+
+    private ByteBuffer buffer;
+    private final long start;
+    private int size;
+    private int offset;
+    private ConstantMap[] constantPools;
+    private TimeConverter timeConverter;
+    private ConstantResolver resolver;
+
+    private ChunkInput(ByteBuffer buffer, long start) {
+        this.buffer = buffer;
+        this.start = start;
+        this.size = buffer.limit();
+    }
+
+    /**
+     * Maps the region {@code [start, end)} of a recording file.
+     *
+     * @param channel channel of the recording file
+     * @param start absolute position of the first byte to map
+     * @param end absolute position after the last byte to map
+     * @return an input positioned at {@code start}
+     * @throws IOException if the region can't be mapped
+     */
+    static ChunkInput map(FileChannel channel, long start, long end) throws IOException {
+        long length = end - start;
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Chunk at position " + start + " is " + length + " bytes, can't map more than " + Integer.MAX_VALUE + " bytes");
+        }
+        if (end > channel.size()) {
+            throw new EOFException("Chunk ends at " + end + ", but file is only " + channel.size() + " bytes.");
+        }
+        return new ChunkInput(channel.map(FileChannel.MapMode.READ_ONLY, start, length), start);
+    }
+
+    /**
+     * Maps the region {@code [start, end)} again, for a chunk that has grown
+     * since it was mapped. The position is kept.
+     */
+    void remap(FileChannel channel, long end) throws IOException {
+        ChunkInput grown = map(channel, start, end);
+        this.buffer = grown.buffer;
+        this.size = grown.size;
+    }
+
+    void bind(ConstantMap[] constantPools, TimeConverter timeConverter) {
+        this.constantPools = constantPools;
+        this.timeConverter = timeConverter;
+    }
+
+    ConstantMap getConstantPool(int index) {
+        return constantPools[index];
+    }
+
+    TimeConverter getTimeConverter() {
+        return timeConverter;
+    }
+
+    void setResolver(ConstantResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    ConstantResolver getResolver() {
+        return resolver;
+    }
+
+    /**
+     * Returns a read-only view of the region {@code [from, to)} of the chunk,
+     * without moving the position.
+     */
+    ByteBuffer slice(long from, long to) throws IOException {
+        if (from < start || from > to || to > start + size) {
+            throw new EOFException("Trying to read [" + from + ", " + to + "], but chunk is [" + start + ", " + (start + size) + "]");
+        }
+        ByteBuffer b = buffer.asReadOnlyBuffer();
+        b.limit((int) (to - start));
+        b.position((int) (from - start));
+        return b.slice();
+    }
+
+    public long position() {
+        return start + offset;
+    }
+
+    public void position(long newPosition) throws IOException {
+        long newOffset = newPosition - start;
+        if (newOffset < 0 || newOffset > size) {
+            throw new EOFException("Trying to read at " + newPosition + ", but chunk is [" + start + ", " + (start + size) + "]");
+        }
+        offset = (int) newOffset;
+    }
+
+    public byte readByte() throws IOException {
+        if (offset >= size) {
+            throw new EOFException("Trying to read at " + position() + ", but chunk ends at " + (start + size));
+        }
+        return buffer.get(offset++);
+    }
+
+    public void readFully(byte[] dest, int off, int length) throws IOException {
+        require(length, "Trying to read %d bytes past the end of the chunk");
+        // absolute bulk get is JDK 13+, other reads don't depend on the buffer position
+        buffer.position(offset);
+        buffer.get(dest, off, length);
+        offset += length;
+    }
+
+    public int readRawInt() throws IOException {
+        require(Integer.BYTES, "Trying to read %d bytes past the end of the chunk");
+        int i = buffer.getInt(offset);
+        offset += Integer.BYTES;
+        return i;
+    }
+
+    public long readRawLong() throws IOException {
+        require(Long.BYTES, "Trying to read %d bytes past the end of the chunk");
+        long l = buffer.getLong(offset);
+        offset += Long.BYTES;
+        return l;
+    }
+
+    public void skipBytes(int n) throws IOException {
+        require(n, "Trying to skip %d bytes past the end of the chunk");
+        offset += n;
+    }
+
+    public double readDouble() throws IOException {
+        return Double.longBitsToDouble(readRawLong());
+    }
+
+    public float readFloat() throws IOException {
+        return Float.intBitsToFloat(readRawInt());
+    }
+
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    public String readEncodedString(byte encoding) throws IOException {
+        if (encoding == STRING_ENCODING_NULL) {
+            return null;
+        }
+        if (encoding == STRING_ENCODING_EMPTY_STRING) {
+            return "";
+        }
+        int size = readInt();
+        require(size, "String size %d exceeds available data");
+        if (encoding == STRING_ENCODING_CHAR_ARRAY) {
+            char[] c = new char[size];
+            for (int i = 0; i < size; i++) {
+                c[i] = readChar();
+            }
+            return new String(c);
+        }
+        byte[] bytes = new byte[size];
+        readFully(bytes, 0, size);
+        if (encoding == STRING_ENCODING_UTF8_BYTE_ARRAY) {
+            return new String(bytes, UTF8);
+        }
+        if (encoding == STRING_ENCODING_LATIN1_BYTE_ARRAY) {
+            return new String(bytes, LATIN1);
+        }
+        throw new IOException("Unknown string encoding " + encoding);
+    }
+
+    public void skipEncodedString(byte encoding) throws IOException {
+        if (encoding == STRING_ENCODING_NULL || encoding == STRING_ENCODING_EMPTY_STRING) {
+            return;
+        }
+        if (encoding == STRING_ENCODING_CONSTANT_POOL) {
+            readLong();
+            return;
+        }
+        int size = readInt();
+        if (encoding == STRING_ENCODING_CHAR_ARRAY) {
+            for (int i = 0; i < size; i++) {
+                readLong();
+            }
+            return;
+        }
+        if (encoding == STRING_ENCODING_UTF8_BYTE_ARRAY || encoding == STRING_ENCODING_LATIN1_BYTE_ARRAY) {
+            skipBytes(size);
+            return;
+        }
+        throw new IOException("Unknown string encoding " + encoding);
+    }
+
+    public char readChar() throws IOException {
+        return (char) readLong();
+    }
+
+    public short readShort() throws IOException {
+        return (short) readLong();
+    }
+
+    public int readInt() throws IOException {
+        return (int) readLong();
+    }
+
+    public long readLong() throws IOException {
+        // values are compressed, 7 bits per byte and the 9th byte is read raw
+        if (size - offset < 9) {
+            return readLongChecked();
+        }
+        final ByteBuffer b = buffer;
+        int o = offset;
+        byte b0 = b.get(o++);
+        long ret = (b0 & 0x7FL);
+        if (b0 >= 0) {
+            offset = o;
+            return ret;
+        }
+        for (int shift = 7; shift < 56; shift += 7) {
+            byte bn = b.get(o++);
+            ret += (bn & 0x7FL) << shift;
+            if (bn >= 0) {
+                offset = o;
+                return ret;
+            }
+        }
+        ret += ((long) (b.get(o++) & 0xFF)) << 56;
+        offset = o;
+        return ret;
+    }
+
+    // Near the end of the chunk, check every byte
+    private long readLongChecked() throws IOException {
+        long ret = 0;
+        for (int shift = 0; shift < 56; shift += 7) {
+            byte bn = readByte();
+            ret += (bn & 0x7FL) << shift;
+            if (bn >= 0) {
+                return ret;
+            }
+        }
+        return ret + (((long) (readByte() & 0xFF)) << 56);
+    }
+
+    // Purpose of this method is to prevent OOM by sanity check
+    // the minimum required number of bytes against what is available in
+    // the chunk
+    public void require(int minimumBytes, String errorMessage) throws IOException {
+        if (minimumBytes < 0 || offset + (long) minimumBytes > size) {
+            throw new IOException(String.format(errorMessage, minimumBytes));
+        }
+    }
+}
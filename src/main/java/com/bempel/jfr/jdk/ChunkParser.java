@@ -34,54 +34,279 @@ import jdk.jfr.internal.Type;
 import jdk.jfr.internal.consumer.ChunkHeader;
 import jdk.jfr.internal.consumer.RecordingInput;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
  * Parses a chunk.
- *
+ * <p>
+ * A chunk still being written by the JVM, in a repository file, is parsed up
+ * to what has been flushed so far. {@link RecordingFile#refresh()} then reads
+ * what has been flushed since: new constant pool entries are merged into the
+ * pools and the events after the last one read are returned.
  */
 public final class ChunkParser {
     private static final long CONSTANT_POOL_TYPE_ID = 1;
-    private final RecordingInput input;
-    private final LongMap<Parser> parsers;
+    // chunk header, updated by the JVM at every flush of a chunk in progress
+    private static final int HEADER_SIZE = 68;
+    private static final int CHUNK_SIZE_POSITION = 8;
+    private static final int CONSTANT_POOL_POSITION = 16;
+    private static final int METADATA_POSITION = 24;
+    private static final int FILE_STATE_POSITION = 64;
+    private static final byte FILE_STATE_FINISHED = 0;
+    private static final byte UPDATING_CHUNK_HEADER = (byte) 255;
+    private static final int HEADER_READ_ATTEMPTS = 1000;
+    private final FileChannel channel;
+    private final ChunkInput input;
+    private final ParserConfiguration configuration;
+    private final ParserCache parserCache;
+    private final ConstantInterner interner;
     private final ChunkHeader chunkHeader;
-    private final long absoluteChunkEnd;
-    private final MetadataDescriptor metadata;
-    private final LongMap<Type> typeMap;
     private final TimeConverter timeConverter;
     private final LongMap<ConstantMap> constantPools;
     private final Map<String, Long> poolSizes = new HashMap<>();
+    private final boolean inProgress;
+    private final ParserProfile profile;
+    private LongMap<Parser> parsers;
+    private ParserFactory factory;
+    private MetadataDescriptor metadata;
+    private LongMap<Type> typeMap;
+    private ContentHasher contentHasher;
+    // events reused by a cursor, one per event parser
+    private Map<EventParser, RecordedEvent> eventViews;
+    // last values read from the header, relative to the chunk start
+    private long chunkSize;
+    private long constantPoolPosition;
+    private long metadataPosition;
+    private boolean finished;
+    private long absoluteChunkEnd;
 
-    public ChunkParser(RecordingInput input) throws IOException {
-        this(new ChunkHeader(input));
+    public ChunkParser(RecordingInput input, FileChannel channel, ParserConfiguration configuration) throws IOException {
+        this(new ChunkHeader(input), channel, configuration, new ParserCache(configuration), configuration.isInternConstantPools() ? new ConstantInterner() : null);
     }
 
-    private ChunkParser(ChunkHeader header) throws IOException {
-        this.input = header.getInput();
+    ChunkParser(ChunkHeader header, FileChannel channel, ParserConfiguration configuration, ParserCache parserCache, ConstantInterner interner) throws IOException {
+        this.channel = channel;
+        this.configuration = configuration;
+        this.parserCache = parserCache;
+        this.interner = interner;
+        this.profile = configuration.getProfile();
+        this.input = ChunkInput.map(channel, header.getAbsoluteChunkStart(), header.getEnd());
         this.chunkHeader = header;
-        this.metadata = header.readMetadata();
-        this.absoluteChunkEnd = header.getEnd();
-        this.timeConverter = new TimeConverter(chunkHeader, metadata.getGMTOffset());
+        readHeader();
+        this.inProgress = !finished;
+        if (metadataPosition == 0) {
+            throw new IOException("Nothing has been flushed yet to chunk at position " + header.getAbsoluteChunkStart());
+        }
+        // the header may have been updated since it was read
+        this.absoluteChunkEnd = header.getAbsoluteChunkStart() + chunkSize;
+        if (absoluteChunkEnd > header.getEnd()) {
+            input.remap(channel, absoluteChunkEnd);
+        }
+        // parsers are shared with the previous chunks that had the same
+        // metadata, only the constant pools and time converter are new
+        ParserFactory factory = parserCache.getParserFactory(header.getInput(), header.getAbsoluteChunkStart() + metadataPosition, input);
+        this.timeConverter = new TimeConverter(chunkHeader, factory.getMetadata().getGMTOffset());
+        constantPools = new LongMap<>();
+        bindMetadata(factory);
+        // interned entries are identified by their content hash
+        boolean hashes = configuration.isContentHashes() || interner != null;
+        contentHasher = hashes ? new ContentHasher(input, parsers, factory.getConstantPoolTypes()) : null;
+        readConstantPools(-1);
 
-        ParserFactory factory = new ParserFactory(metadata, timeConverter);
-        constantPools = factory.getConstantPools();
-        parsers = factory.getParsers();
-        typeMap = factory.getTypeMap();
+        input.position(chunkHeader.getEventStart());
+    }
 
-        fillConstantPools(parsers, constantPools);
-        constantPools.forEach(ConstantMap::setIsResolving);
-        constantPools.forEach(ConstantMap::resolve);
-        constantPools.forEach(ConstantMap::setResolved);
+    /**
+     * Reads what the JVM has flushed to a chunk in progress since it was
+     * opened or last refreshed.
+     *
+     * @param file the recording file, opened again only if a new metadata
+     *        event has been written
+     * @return {@code true} if the chunk has grown
+     * @throws IOException if the new data can't be read
+     */
+    boolean refresh(File file) throws IOException {
+        if (finished) {
+            return false;
+        }
+        long chunkStart = chunkHeader.getAbsoluteChunkStart();
+        long lastMetadataPosition = metadataPosition;
+        long lastConstantPoolPosition = constantPoolPosition;
+        readHeader();
+        long end = chunkStart + chunkSize;
+        if (end <= absoluteChunkEnd) {
+            return false;
+        }
+        input.remap(channel, end);
+        absoluteChunkEnd = end;
+        if (metadataPosition != lastMetadataPosition) {
+            try (RecordingInput recording = new RecordingInput(file)) {
+                bindMetadata(parserCache.getParserFactory(recording, chunkStart + metadataPosition, input));
+            }
+        }
+        if (constantPoolPosition != lastConstantPoolPosition) {
+            long position = input.position();
+            readConstantPools(chunkStart + lastConstantPoolPosition);
+            input.position(position);
+        }
+        return true;
+    }
 
-        input.position(chunkHeader.getEventStart());
+    // The JVM sets the file state to 255 while it updates the header, and to
+    // 0 once the chunk is finished. Chunks written by JDK 11 have no state,
+    // the byte is always 0.
+    private void readHeader() throws IOException {
+        long chunkStart = chunkHeader.getAbsoluteChunkStart();
+        ByteBuffer header = input.slice(chunkStart, chunkStart + HEADER_SIZE);
+        for (int i = 0; i < HEADER_READ_ATTEMPTS; i++) {
+            byte state = header.get(FILE_STATE_POSITION);
+            if (state != UPDATING_CHUNK_HEADER) {
+                long size = header.getLong(CHUNK_SIZE_POSITION);
+                long constantPool = header.getLong(CONSTANT_POOL_POSITION);
+                long metadata = header.getLong(METADATA_POSITION);
+                if (header.get(FILE_STATE_POSITION) == state) {
+                    chunkSize = size;
+                    constantPoolPosition = constantPool;
+                    metadataPosition = metadata;
+                    finished = state == FILE_STATE_FINISHED;
+                    return;
+                }
+            }
+            Thread.onSpinWait();
+        }
+        throw new IOException("Header of chunk at position " + chunkStart + " is still being updated");
+    }
+
+    // pools are kept when a chunk in progress gets a new metadata event, the
+    // parsers and the pool indexes they use are replaced
+    private void bindMetadata(ParserFactory factory) {
+        this.factory = factory;
+        this.metadata = factory.getMetadata();
+        this.parsers = factory.getParsers();
+        this.typeMap = factory.getTypeMap();
+        List<Type> poolTypes = factory.getConstantPoolTypes();
+        ConstantMap[] pools = factory.newConstantPools(timeConverter);
+        for (int i = 0; i < pools.length; i++) {
+            long typeId = poolTypes.get(i).getId();
+            ConstantMap pool = constantPools.get(typeId);
+            if (pool != null) {
+                pools[i] = pool;
+            } else {
+                constantPools.put(typeId, pools[i]);
+            }
+        }
+        input.bind(pools, timeConverter);
+        if (contentHasher != null) {
+            contentHasher.bind(parsers, poolTypes);
+        }
+        if (configuration.isLazyConstantPools()) {
+            // only index entries, they are decoded when first referenced
+            for (Map.Entry<Long, ConstantMap> entry : constantPools.entrySet()) {
+                ConstantMap pool = entry.getValue();
+                if (pool.isLazy()) {
+                    pool.setParser(parsers.get(entry.getKey()));
+                } else {
+                    pool.setLazy(input, parsers.get(entry.getKey()), configuration.isOffHeapConstantPools());
+                }
+            }
+        }
+    }
+
+    // reads the checkpoints written after the one at a position, all of them
+    // if the position is -1
+    private void readConstantPools(long lastConstantPool) throws IOException {
+        if (interner != null) {
+            for (Type type : factory.getConstantPoolTypes()) {
+                ConstantInterner.Pool pool = interner.getPool(type.getName());
+                if (pool != null) {
+                    constantPools.get(type.getId()).setInterned(pool, contentHasher, type.getId());
+                }
+            }
+        }
+        long startNanos = profile != null ? System.nanoTime() : 0;
+        long startAllocated = profile != null ? profile.allocatedBytes() : 0;
+        if (configuration.isLazyConstantPools()) {
+            long bytes = fillConstantPools(parsers, constantPools, null, lastConstantPool);
+            if (profile != null) {
+                profile.record(ParserProfile.Phase.CONSTANT_POOLS, startNanos, startAllocated, bytes);
+            }
+        } else {
+            ConstantResolver resolver = new ConstantResolver(input);
+            input.setResolver(resolver);
+            long bytes = fillConstantPools(parsers, constantPools, resolver, lastConstantPool);
+            input.setResolver(null);
+            if (profile != null) {
+                profile.record(ParserProfile.Phase.CONSTANT_POOLS, startNanos, startAllocated, bytes);
+                startNanos = System.nanoTime();
+                startAllocated = profile.allocatedBytes();
+            }
+            resolver.resolve(constantPools);
+            constantPools.forEach(ConstantMap::setResolved);
+            if (profile != null) {
+                profile.record(ParserProfile.Phase.RESOLUTION, startNanos, startAllocated, 0);
+            }
+            if (finished && !configuration.isContentHashes()) {
+                contentHasher = null; // entries are interned, release memory
+            }
+        }
     }
 
     public RecordedEvent readEvent() throws IOException {
+        return readEvent(false);
+    }
+
+    // package private, a reused event returns the same instance for every
+    // event of a type, see RecordingCursor
+    RecordedEvent readEvent(boolean reused) throws IOException {
+        if (configuration.isConstantPoolsOnly()) {
+            return null;
+        }
+        if (profile != null) {
+            long startNanos = System.nanoTime();
+            long startAllocated = profile.allocatedBytes();
+            long start = input.position();
+            RecordedEvent event = reused ? readNextView() : readNextEvent();
+            if (event != null || input.position() != start) {
+                profile.record(ParserProfile.Phase.EVENTS, event != null ? 1 : 0, startNanos, startAllocated, input.position() - start);
+            }
+            return event;
+        }
+        return reused ? readNextView() : readNextEvent();
+    }
+
+    private RecordedEvent readNextEvent() throws IOException {
+        EventParser ep = nextEventParser();
+        return ep != null ? (RecordedEvent) ep.parse(input) : null;
+    }
+
+    private RecordedEvent readNextView() throws IOException {
+        EventParser ep = nextEventParser();
+        if (ep == null) {
+            return null;
+        }
+        if (eventViews == null) {
+            eventViews = new IdentityHashMap<>();
+        }
+        RecordedEvent view = eventViews.get(ep);
+        if (view == null) {
+            view = ep.newView(timeConverter);
+            eventViews.put(ep, view);
+        }
+        ep.parseInto(input, view);
+        return view;
+    }
+
+    // positions the input after the header of the next event and returns
+    // its parser, or null at the end of the chunk
+    private EventParser nextEventParser() throws IOException {
         while (input.position() < absoluteChunkEnd) {
             long pos = input.position();
             int size = input.readInt();
@@ -92,7 +317,7 @@ public final class ChunkParser {
             if (typeId > CONSTANT_POOL_TYPE_ID) { // also skips metadata (id=0)
                 Parser ep = parsers.get(typeId);
                 if (ep instanceof EventParser) {
-                    return (RecordedEvent) ep.parse(input);
+                    return (EventParser) ep;
                 }
             }
             input.position(pos + size);
@@ -100,10 +325,14 @@ public final class ChunkParser {
         return null;
     }
 
-    private void fillConstantPools(LongMap<Parser> typeParser, LongMap<ConstantMap> constantPools) throws IOException {
+    // returns the size of the checkpoints read
+    private long fillConstantPools(LongMap<Parser> typeParser, LongMap<ConstantMap> constantPools, ConstantResolver resolver, long lastConstantPool) throws IOException {
+        long bytes = 0;
         long nextCP = chunkHeader.getAbsoluteChunkStart();
-        long deltaToNext = chunkHeader.getConstantPoolPosition();
-        while (deltaToNext != 0) {
+        long deltaToNext = constantPoolPosition;
+        // the header of a chunk in progress points to the last checkpoint,
+        // and each checkpoint to the one before
+        while (deltaToNext != 0 && nextCP + deltaToNext != lastConstantPool) {
             nextCP += deltaToNext;
             input.position(nextCP);
             final long position = nextCP;
@@ -121,49 +350,66 @@ public final class ChunkParser {
             Logger.log(LogTag.JFR_SYSTEM_PARSER, LogLevel.TRACE, () -> {
                 return "New constant pool: startPosition=" + position + ", size=" + size + ", deltaToNext=" + delta + ", flush=" + flush + ", poolCount=" + poolCount;
             });
-            //System.out.printf("PARSING: New constant pool: startPosition=%d, size=%d, deltaToNext=%d, poolCount=%d\n", position, size, delta, poolCount);
-            List<String> poolTypeNames = new ArrayList<>();
             for (int i = 0; i < poolCount; i++) {
                 long id = input.readLong(); // type id
                 ConstantMap pool = constantPools.get(id);
                 Type type = typeMap.get(id);
-                poolTypeNames.add(type.getName());
+                if (type == null) {
+                    throw new IOException("Error parsing constant pool type " + getName(id) + " at position " + input.position() + " at check point between [" + nextCP + ", " + nextCP + size + "]");
+                }
                 if (pool == null) {
                     Logger.log(LogTag.JFR_SYSTEM_PARSER, LogLevel.INFO, "Found constant pool(" + id + ") that is never used");
-                    if (type == null) {
-                        throw new IOException("Error parsing constant pool type " + getName(id) + " at position " + input.position() + " at check point between [" + nextCP + ", " + nextCP + size + "]");
-                    }
-                    pool = new ConstantMap(ObjectFactory.create(type, timeConverter), type.getName());
+                    pool = new ConstantMap(factory.createObjectFactory(type, timeConverter), type.getName());
                     constantPools.put(type.getId(), pool);
                 }
                 Parser parser = typeParser.get(id);
                 if (parser == null) {
                     throw new IOException("Could not find constant pool type with id = " + id);
                 }
+                if (configuration.isLazyConstantPools() && !pool.isLazy()) {
+                    pool.setLazy(input, parser, configuration.isOffHeapConstantPools());
+                }
+                // entries of pools nobody asked for are only walked over
+                boolean read = factory.isReadConstantPool(id);
+                long startNanos = profile != null ? System.nanoTime() : 0;
+                long startAllocated = profile != null ? profile.allocatedBytes() : 0;
                 try {
                     int count = input.readInt();
                     Logger.log(LogTag.JFR_SYSTEM_PARSER, LogLevel.TRACE, () -> "Constant: " + getName(id) + "[" + count + "]");
+                    long start = input.position();
                     for (int j = 0; j < count; j++) {
-                        long before = input.position();
                         long key = input.readLong();
-                        Object value = parser.parse(input);
-                        pool.put(key, value);
-                        long poolEntrySize = input.position() - before;
-                        poolSizes.compute(type.getName(), (k, v) -> v == null ? poolEntrySize : v + poolEntrySize);
+                        if (contentHasher != null) {
+                            contentHasher.add(id, key, input.position());
+                        }
+                        if (!read) {
+                            parser.skip(input);
+                        } else if (pool.isLazy()) {
+                            pool.putOffset(key, input.position());
+                            parser.skip(input);
+                        } else {
+                            int mark = resolver.mark();
+                            resolver.put(pool, key, parser.parse(input), mark);
+                        }
+                    }
+                    // once per pool and checkpoint rather than per entry
+                    long poolBytes = input.position() - start;
+                    if (count > 0) {
+                        poolSizes.merge(type.getName(), poolBytes, Long::sum);
+                    }
+                    if (profile != null) {
+                        profile.recordConstantPool(type.getName(), count, startNanos, startAllocated, poolBytes);
                     }
                 } catch (Exception e) {
                     throw new IOException("Error parsing constant pool type " + getName(id) + " at position " + input.position() + " at check point between [" + nextCP + ", " + nextCP + size + "]", e);
                 }
             }
-            /*
-            poolSizes.forEach((k, v) -> {
-                System.out.printf("Pool Name: %s Size: %d \n", k, v);
-            });
-             */
             if (input.position() != nextCP + size) {
                 throw new IOException("Size of check point event doesn't match content");
             }
+            bytes += size;
         }
+        return bytes;
     }
 
     private String getName(long id) {
@@ -179,12 +425,25 @@ public final class ChunkParser {
         return metadata.getEventTypes();
     }
 
+    /**
+     * Returns {@code true} if no chunk follows this one in the file. A chunk
+     * the JVM was still writing when it was opened is the last one, as the
+     * JVM writes a repository file per chunk.
+     */
     public boolean isLastChunk() {
-        return chunkHeader.isLastChunk();
+        return inProgress || chunkHeader.isLastChunk();
+    }
+
+    /**
+     * Returns {@code false} if the JVM was still writing the chunk when its
+     * header was last read.
+     */
+    public boolean isFinished() {
+        return finished;
     }
 
     public ChunkParser nextChunkParser() throws IOException {
-        return new ChunkParser(chunkHeader.nextHeader());
+        return new ChunkParser(chunkHeader.nextHeader(), channel, configuration, parserCache, interner);
     }
 
     public LongMap<ConstantMap> getConstantPools() {
@@ -194,4 +453,20 @@ public final class ChunkParser {
     public Map<String, Long> getPoolSizes() {
         return poolSizes;
     }
+
+    /**
+     * Returns a content hash of every entry of a constant pool, in the order
+     * entries appear in the chunk. Needs
+     * {@link ParserConfiguration#setContentHashes(boolean)}.
+     *
+     * @param typeId id of the type of the pool
+     * @return the hashes, empty if the chunk has no such pool
+     * @throws IOException if an entry can't be read
+     */
+    public long[] getContentHashes(long typeId) throws IOException {
+        if (contentHasher == null) {
+            throw new IllegalStateException("Content hashes are not enabled");
+        }
+        return contentHasher.getHashes(typeId);
+    }
 }
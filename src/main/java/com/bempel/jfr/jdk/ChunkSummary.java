@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2016, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.bempel.jfr.jdk;
+
+import jdk.jfr.internal.MetadataDescriptor;
+import jdk.jfr.internal.Type;
+import jdk.jfr.internal.consumer.RecordingInput;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Number of events and bytes per event type in a chunk.
+ * <p>
+ * The event section is walked using only the size and type id that start
+ * every event, bodies are skipped and neither constant pools nor events are
+ * parsed. Only the metadata is read, to name the types, and it is read once
+ * for chunks with identical metadata.
+ */
+public final class ChunkSummary {
+    private static final long METADATA_TYPE_ID = 0;
+    private static final long CONSTANT_POOL_TYPE_ID = 1;
+
+    private final ChunkInfo chunk;
+    private final List<EventTypeSummary> eventTypes;
+
+    private ChunkSummary(ChunkInfo chunk, List<EventTypeSummary> eventTypes) {
+        this.chunk = chunk;
+        this.eventTypes = eventTypes;
+    }
+
+    /**
+     * Summarizes every chunk of a recording file.
+     *
+     * @param channel channel of the recording file
+     * @param recording input of the recording file, to read metadata
+     * @return the summaries, in file order
+     * @throws IOException if a chunk is not valid, or an I/O error occurred
+     */
+    static List<ChunkSummary> readAll(FileChannel channel, RecordingInput recording) throws IOException {
+        Map<ByteBuffer, LongMap<String>> typeNames = new HashMap<>();
+        List<ChunkSummary> summaries = new ArrayList<>();
+        for (ChunkInfo chunk : ChunkInfo.readAll(channel)) {
+            ChunkInput input = ChunkInput.map(channel, chunk.getStartPosition(), chunk.getEndPosition());
+            LongMap<String> names = readTypeNames(chunk, input, recording, typeNames);
+            summaries.add(new ChunkSummary(chunk, scan(chunk, input, names)));
+        }
+        return summaries;
+    }
+
+    private static LongMap<String> readTypeNames(ChunkInfo chunk, ChunkInput input, RecordingInput recording, Map<ByteBuffer, LongMap<String>> typeNames) throws IOException {
+        long metadataStart = chunk.getStartPosition() + chunk.getMetadataOffset();
+        ByteBuffer fingerprint = ParserCache.fingerprint(metadataStart, input);
+        LongMap<String> names = typeNames.get(fingerprint);
+        if (names == null) {
+            MetadataDescriptor metadata = ParserCache.readMetadata(recording, metadataStart);
+            names = new LongMap<>();
+            names.put(METADATA_TYPE_ID, "jdk.Metadata");
+            names.put(CONSTANT_POOL_TYPE_ID, "jdk.CheckPoint");
+            for (Type type : metadata.getTypes()) {
+                names.put(type.getId(), type.getName());
+            }
+            // the key must not keep the chunk mapped
+            ByteBuffer key = ByteBuffer.allocate(fingerprint.remaining());
+            key.put(fingerprint.duplicate()).flip();
+            typeNames.put(key, names);
+        }
+        return names;
+    }
+
+    private static List<EventTypeSummary> scan(ChunkInfo chunk, ChunkInput input, LongMap<String> names) throws IOException {
+        // by type id, count and bytes
+        LongMap<long[]> totals = new LongMap<>();
+        long end = chunk.getEndPosition();
+        long position = chunk.getStartPosition() + ChunkInfo.HEADER_SIZE;
+        while (position < end) {
+            input.position(position);
+            int size = input.readInt();
+            if (size <= 0) {
+                throw new IOException("Event at position " + position + " has invalid size " + size);
+            }
+            long typeId = input.readLong();
+            long[] total = totals.get(typeId);
+            if (total == null) {
+                total = new long[2];
+                totals.put(typeId, total);
+            }
+            total[0]++;
+            total[1] += size;
+            position += size;
+        }
+        List<EventTypeSummary> eventTypes = new ArrayList<>(totals.size());
+        for (int i = 0; i < totals.size(); i++) {
+            long typeId = totals.keyAt(i);
+            String name = names.get(typeId);
+            long[] total = totals.valueAt(i);
+            eventTypes.add(new EventTypeSummary(typeId, name != null ? name : "unknown(" + typeId + ")", total[0], total[1]));
+        }
+        eventTypes.sort(Comparator.comparingLong(EventTypeSummary::getSize).reversed());
+        return Collections.unmodifiableList(eventTypes);
+    }
+
+    public ChunkInfo getChunk() {
+        return chunk;
+    }
+
+    /**
+     * Returns the event types found in the chunk, by decreasing size. The
+     * constant pools and metadata are reported as {@code jdk.CheckPoint} and
+     * {@code jdk.Metadata}.
+     */
+    public List<EventTypeSummary> getEventTypes() {
+        return eventTypes;
+    }
+
+    @Override
+    public String toString() {
+        return chunk + " " + eventTypes.size() + " event types";
+    }
+}
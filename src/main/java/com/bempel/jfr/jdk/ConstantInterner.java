@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2016, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.bempel.jfr.jdk;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Canonical constant pool entries of a recording.
+ * <p>
+ * Every chunk has its own constant pools, so the same class or method is
+ * decoded again in each chunk. Entries of the pools describing code are
+ * identified by their content hash, see {@link ContentHasher}, and the first
+ * instance seen for a hash is returned for it by every later chunk, including
+ * chunks parsed concurrently. Each canonical instance gets an id, sequential
+ * per pool type, that stays the same for the whole recording.
+ * <p>
+ * Entries are merged by their 64-bit FNV-1a hash alone, the decoded values
+ * are not compared. Two different entries with the same hash would share
+ * the instance seen first. With n distinct entries of a type, the odds are
+ * about n<sup>2</sup> / 2<sup>65</sup>, below one in a million up to
+ * 6 million entries per type. Interning is off by default, see
+ * {@link ParserConfiguration#setInternConstantPools(boolean)}.
+ */
+final class ConstantInterner {
+
+    /**
+     * Canonical entries of one pool type, by content hash.
+     * <p>
+     * Lookups, one per decode of a referenced entry in lazy and off-heap
+     * mode, don't lock. Creating a canonical entry locks its pool only, so
+     * that ids stay sequential.
+     */
+    final class Pool {
+        private final ConcurrentHashMap<Long, Object> canonical = new ConcurrentHashMap<>();
+        // guarded by this pool
+        private long size;
+
+        Object get(long hash) {
+            return canonical.get(hash);
+        }
+
+        /**
+         * Returns the canonical instance for a hash, creating it from a
+         * resolved value if there is none yet. The object factory receives
+         * the recording-wide id instead of the chunk local one.
+         */
+        Object intern(long hash, Object value, ObjectFactory<?> factory) {
+            Object known = canonical.get(hash);
+            if (known != null) {
+                return known;
+            }
+            synchronized (this) {
+                known = canonical.get(hash);
+                if (known != null) {
+                    return known;
+                }
+                long id = size;
+                Object created = factory != null ? factory.createObject(id, value) : value;
+                if (created != null) {
+                    synchronized (ids) {
+                        ids.put(created, id);
+                    }
+                    canonical.put(hash, created);
+                    size++;
+                }
+                return created;
+            }
+        }
+    }
+
+    private final Map<String, Pool> pools = new HashMap<>();
+    private final Map<Object, Long> ids = new IdentityHashMap<>();
+
+    /**
+     * Returns the canonical entries of a pool type, or {@code null} if
+     * entries of that type are not interned.
+     */
+    synchronized Pool getPool(String typeName) {
+        if (!isInterned(typeName)) {
+            return null;
+        }
+        return pools.computeIfAbsent(typeName, name -> new Pool());
+    }
+
+    long getId(Object value) {
+        Long id;
+        synchronized (ids) {
+            id = ids.get(value);
+        }
+        return id == null ? -1 : id;
+    }
+
+    // types describing code, the same from one chunk to the next. Class
+    // loaders are instances, two loaders can have the same content
+    private static boolean isInterned(String typeName) {
+        switch (typeName) {
+        case "java.lang.Class":
+        case ObjectFactory.TYPE_PREFIX_VERSION_1 + "Method":
+        case ObjectFactory.TYPE_PREFIX_VERSION_2 + "Method":
+        case ObjectFactory.TYPE_PREFIX_VERSION_1 + "Module":
+        case ObjectFactory.TYPE_PREFIX_VERSION_2 + "Module":
+        case ObjectFactory.TYPE_PREFIX_VERSION_1 + "Package":
+        case ObjectFactory.TYPE_PREFIX_VERSION_2 + "Package":
+        case ObjectFactory.TYPE_PREFIX_VERSION_1 + "Symbol":
+        case ObjectFactory.TYPE_PREFIX_VERSION_2 + "Symbol":
+        case ObjectFactory.TYPE_PREFIX_VERSION_1 + "StackTrace":
+        case ObjectFactory.TYPE_PREFIX_VERSION_2 + "StackTrace":
+            return true;
+        }
+        return false;
+    }
+}
@@ -25,100 +25,136 @@
 
 package com.bempel.jfr.jdk;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Holds mapping between a set of keys and their corresponding object.
  *
  * If the type is a known type, i.e. {@link RecordedThread}, an
  * {@link ObjectFactory} can be supplied which will instantiate a typed object.
+ *
+ * A lazy map only records the position of each entry in the chunk, and
+ * decodes and resolves an entry the first time it is asked for. An off-heap
+ * map never keeps decoded entries, it decodes an entry every time it is asked
+ * for.
+ *
+ * Entries of an interned map are shared with the other chunks of the
+ * recording, see {@link ConstantInterner}.
  */
 public final class ConstantMap {
-    private final static class Reference {
-        private final long key;
-        private final ConstantMap pool;
-
-        Reference(ConstantMap pool, long key) {
-            this.pool = pool;
-            this.key = key;
-        }
-
-        Object resolve() {
-            return pool.get(key);
-        }
-    }
-
     private final ObjectFactory<?> factory;
     private final LongMap<Object> objects;
 
-    private LongMap<Boolean> isResolving;
     private boolean allResolved;
     private String name;
 
+    // lazy maps only, with the ids of the entries being decoded
+    private OffsetIndex offsets;
+    private ChunkInput input;
+    private Parser parser;
+    private boolean offHeap;
+    private long[] decoding;
+    private int depth;
+
+    // interned maps only
+    private ConstantInterner.Pool interned;
+    private ContentHasher hasher;
+    private long typeId;
+
     ConstantMap(ObjectFactory<?> factory, String name) {
         this.name = name;
         this.objects = new LongMap<>();
         this.factory = factory;
     }
 
-    Object get(long id) {
+    Object get(long id) throws IOException {
         // fast path, all objects in pool resolved
         if (allResolved) {
             return objects.get(id);
         }
-        // referenced from a pool, deal with this later
-        if (isResolving == null) {
-            return new Reference(this, id);
+        if (offsets != null) {
+            return getLazy(id);
         }
+        // pools are being filled, references are resolved afterwards by a
+        // ConstantResolver
+        return objects.get(id);
+    }
 
-        Boolean beingResolved = isResolving.get(id);
-
-        // we are resolved (but not the whole pool)
-        if (Boolean.FALSE.equals(beingResolved)) {
-            return objects.get(id);
+    private Object getLazy(long id) throws IOException {
+        if (!offHeap) {
+            int index = objects.indexOf(id);
+            if (index >= 0) {
+                return objects.valueAt(index);
+            }
         }
-
         // resolving ourself, abort to avoid infinite recursion
-        if (Boolean.TRUE.equals(beingResolved)) {
+        for (int i = 0; i < depth; i++) {
+            if (decoding[i] == id) {
+                return null;
+            }
+        }
+        long offset = offsets.get(id);
+        if (offset < 0) {
             return null;
         }
+        Object value = canonical(id);
+        if (value == null) {
+            value = create(id, decodeEntry(id, offset));
+        }
+        if (!offHeap) {
+            objects.put(id, value);
+        }
+        return value;
+    }
 
-        // resolve me!
-        isResolving.put(id, Boolean.TRUE);
-        Object resolved = resolve(objects.get(id));
-        isResolving.put(id, Boolean.FALSE);
-        if (factory != null) {
-            Object factorized = factory.createObject(id, resolved);
-            objects.put(id, factorized);
-            return factorized;
-        } else {
-            objects.put(id, resolved);
-            return resolved;
+    // decodes an entry of a lazy map, with its id on the stack of entries
+    // being decoded so that a reference to itself stops the recursion
+    private Object decodeEntry(long id, long offset) throws IOException {
+        // nested pools are lazy too, so the value comes back resolved
+        if (depth == decoding.length) {
+            decoding = Arrays.copyOf(decoding, 2 * depth);
+        }
+        decoding[depth++] = id;
+        try {
+            return decode(offset);
+        } finally {
+            depth--;
         }
     }
 
-    private static Object resolve(Object o) {
-        if (o instanceof Reference) {
-            return resolve(((Reference) o).resolve());
+    // instance already created by another chunk, if the map is interned
+    private Object canonical(long id) throws IOException {
+        return interned != null ? interned.get(hasher.entryHash(typeId, id)) : null;
+    }
+
+    private Object create(long id, Object value) throws IOException {
+        if (interned != null) {
+            return interned.intern(hasher.entryHash(typeId, id), value, factory);
         }
-        if (o != null && o.getClass().isArray()) {
-            final Object[] array = (Object[]) o;
-            for (int i = 0; i < array.length; i++) {
-                array[i] = resolve(array[i]);
-            }
-            return array;
+        return factory != null ? factory.createObject(id, value) : value;
+    }
+
+    // entries can be decoded in the middle of an event, restore the position
+    private Object decode(long offset) throws IOException {
+        long position = input.position();
+        try {
+            input.position(offset);
+            return parser.parse(input);
+        } finally {
+            input.position(position);
         }
-        return o;
     }
 
-    public void resolve() {
-        List<Long> keyList = new ArrayList<>();
-        objects.keys().forEachRemaining(keyList::add);
-        for (Long l : keyList) {
-            get(l);
+    public void resolve() throws IOException {
+        // entries added while resolving go after the existing ones
+        int count = size();
+        for (int i = 0; i < count; i++) {
+            get(offsets != null ? offsets.keyAt(i) : objects.keyAt(i));
         }
     }
 
@@ -126,13 +162,65 @@ public final class ConstantMap {
         objects.put(key, value);
     }
 
-    public void setIsResolving() {
-        isResolving = new LongMap<>();
+    void setLazy(ChunkInput input, Parser parser, boolean offHeap) {
+        this.input = input;
+        this.parser = parser;
+        this.offsets = new OffsetIndex(offHeap);
+        this.offHeap = offHeap;
+        this.decoding = new long[8];
+    }
+
+    // parser of a new metadata event of the chunk
+    void setParser(Parser parser) {
+        this.parser = parser;
+    }
+
+    void setInterned(ConstantInterner.Pool interned, ContentHasher hasher, long typeId) {
+        this.interned = interned;
+        this.hasher = hasher;
+        this.typeId = typeId;
+    }
+
+    boolean isLazy() {
+        return offsets != null;
+    }
+
+    void putOffset(long key, long offset) {
+        offsets.put(key, offset);
+    }
+
+    int indexOf(long key) {
+        return objects.indexOf(key);
+    }
+
+    Object valueAt(int index) {
+        return objects.valueAt(index);
+    }
+
+    void setValueAt(int index, Object value) {
+        objects.setValueAt(index, value);
+    }
+
+    // eager maps, before the references of an entry are resolved
+    Object canonicalAt(int index) throws IOException {
+        Object value = canonical(objects.keyAt(index));
+        if (value != null) {
+            objects.setValueAt(index, value);
+        }
+        return value;
+    }
+
+    // eager maps, once the references of an entry are resolved
+    Object createAt(int index) throws IOException {
+        Object value = create(objects.keyAt(index), objects.valueAt(index));
+        objects.setValueAt(index, value);
+        return value;
     }
 
     public void setResolved() {
         allResolved = true;
-        isResolving = null; // pool finished, release memory
+        interned = null;
+        hasher = null;
     }
 
     public String getName() {
@@ -140,10 +228,61 @@ public final class ConstantMap {
     }
 
     public int size() {
-        return objects.size();
+        return offsets != null ? offsets.size() : objects.size();
     }
 
+    /**
+     * Passes every value to an action, in the order entries were read.
+     * <p>
+     * Entries of a lazy map are decoded one at a time and are not kept, unless
+     * another entry references them.
+     *
+     * @param action action to perform on each value
+     * @throws IOException if an entry can't be decoded
+     */
+    public void forEachValue(Consumer<Object> action) throws IOException {
+        if (offsets == null) {
+            objects.forEach(action);
+            return;
+        }
+        for (int i = 0; i < offsets.size(); i++) {
+            long key = offsets.keyAt(i);
+            Object value = objects.get(key);
+            if (value == null) {
+                value = canonical(key);
+            }
+            if (value == null) {
+                value = create(key, decodeEntry(key, offsets.offsetAt(i)));
+            }
+            action.accept(value);
+        }
+    }
+
+    /**
+     * Returns the entries of the map, in the order they were read, decoding
+     * the entries of a lazy map not decoded yet.
+     * <p>
+     * {@link Map.Entry#setValue(Object)} replaces the value in the map,
+     * except for an off-heap map whose entries are decoded into the returned
+     * set only.
+     */
     public Set<Map.Entry<Long, Object>> entrySet() {
+        try {
+            if (offHeap) {
+                // decoded entries are only held by the returned set
+                LongMap<Object> decoded = new LongMap<>();
+                for (int i = 0; i < offsets.size(); i++) {
+                    long key = offsets.keyAt(i);
+                    decoded.put(key, get(key));
+                }
+                return decoded.entrySet();
+            }
+            if (offsets != null && objects.size() != offsets.size()) {
+                resolve();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
         return objects.entrySet();
     }
 }
@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2016, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.bempel.jfr.jdk;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Resolves the references between the constant pool entries of a chunk.
+ * <p>
+ * While the pools are filled, a reference to another entry is not looked up.
+ * Its pool, its key and the slot that holds it are recorded in arrays and a
+ * marker is stored in the slot. Once every pool is filled, entries are
+ * resolved depth first with an explicit stack, referenced entries before the
+ * entries referencing them, and a reference back to an entry being resolved is
+ * set to {@code null}.
+ * <p>
+ * Entries already in a pool when the resolver first sees it, read from
+ * earlier checkpoints of a chunk in progress, are resolved already, unless
+ * they are put again.
+ */
+final class ConstantResolver {
+    // stored in a slot until the reference is resolved
+    static final Object PENDING = new Object();
+
+    private static final byte UNRESOLVED = 0;
+    private static final byte RESOLVING = 1;
+    private static final byte RESOLVED = 2;
+
+    // entries of a pool, by index in the map
+    private static final class Entries {
+        private final ConstantMap map;
+        private int[] referenceStarts = new int[64];
+        private int[] referenceEnds = new int[64];
+        private byte[] states = new byte[64];
+
+        Entries(ConstantMap map) {
+            this.map = map;
+            // resolved by a previous resolver
+            int size = map.size();
+            if (size > 0) {
+                ensureCapacity(size - 1);
+                Arrays.fill(states, 0, size, RESOLVED);
+            }
+        }
+
+        void ensureCapacity(int index) {
+            if (index >= states.length) {
+                int capacity = Math.max(2 * states.length, index + 1);
+                referenceStarts = Arrays.copyOf(referenceStarts, capacity);
+                referenceEnds = Arrays.copyOf(referenceEnds, capacity);
+                states = Arrays.copyOf(states, capacity);
+            }
+        }
+    }
+
+    private final ChunkInput input;
+    private final Map<ConstantMap, Entries> entries = new IdentityHashMap<>();
+
+    // references, the pool index and key of the referenced entry, and the
+    // array, or the map for a top level reference, with the slot holding it
+    private int[] pools = new int[1024];
+    private long[] keys = new long[1024];
+    private Object[] containers = new Object[1024];
+    private int[] slots = new int[1024];
+    private int count;
+
+    // entries being resolved, with the next reference to resolve
+    private Entries[] stackEntries = new Entries[16];
+    private int[] stackIndexes = new int[16];
+    private int[] stackNext = new int[16];
+    private int depth;
+
+    ConstantResolver(ChunkInput input) {
+        this.input = input;
+    }
+
+    /**
+     * Records a reference, the caller stores the returned marker and gives
+     * its slot with {@link #slot(Object[], int)}.
+     */
+    Object reference(int pool, long key) {
+        if (count == pools.length) {
+            int capacity = 2 * count;
+            pools = Arrays.copyOf(pools, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+            containers = Arrays.copyOf(containers, capacity);
+            slots = Arrays.copyOf(slots, capacity);
+        }
+        pools[count] = pool;
+        keys[count] = key;
+        count++;
+        return PENDING;
+    }
+
+    void slot(Object[] container, int index) {
+        containers[count - 1] = container;
+        slots[count - 1] = index;
+    }
+
+    /**
+     * Returns the number of references recorded, to call before parsing an
+     * entry.
+     */
+    int mark() {
+        return count;
+    }
+
+    /**
+     * Puts an entry parsed since a mark in its pool.
+     */
+    void put(ConstantMap map, long key, Object value, int mark) {
+        Entries e = entries(map);
+        map.put(key, value);
+        int index = map.indexOf(key);
+        if (value == PENDING) {
+            // the entry is a reference itself
+            containers[count - 1] = map;
+            slots[count - 1] = index;
+        }
+        e.ensureCapacity(index);
+        e.referenceStarts[index] = mark;
+        e.referenceEnds[index] = count;
+        e.states[index] = UNRESOLVED;
+    }
+
+    /**
+     * Resolves all the entries, pool after pool in the given order.
+     */
+    void resolve(Iterable<ConstantMap> maps) throws IOException {
+        for (ConstantMap map : maps) {
+            Entries e = entries.get(map);
+            if (e == null) {
+                continue; // nothing read for this pool
+            }
+            int size = map.size();
+            for (int i = 0; i < size; i++) {
+                if (e.states[i] == UNRESOLVED && push(e, i) == PENDING) {
+                    resolveStack();
+                }
+            }
+        }
+    }
+
+    private void resolveStack() throws IOException {
+        while (depth > 0) {
+            int top = depth - 1;
+            Entries e = stackEntries[top];
+            int index = stackIndexes[top];
+            int r = stackNext[top];
+            if (r < e.referenceEnds[index]) {
+                stackNext[top] = r + 1;
+                Entries target = entries(input.getConstantPool(pools[r]));
+                int t = target.map.indexOf(keys[r]);
+                if (t < 0) {
+                    // missing entry, recorded as null like when looked up
+                    target.map.put(keys[r], null);
+                    t = target.map.indexOf(keys[r]);
+                    target.ensureCapacity(t);
+                    target.states[t] = RESOLVED;
+                    set(r, null);
+                } else if (target.states[t] == RESOLVED) {
+                    set(r, target.map.valueAt(t));
+                } else if (target.states[t] == RESOLVING) {
+                    set(r, null); // cycle
+                } else {
+                    Object value = push(target, t);
+                    if (value != PENDING) {
+                        set(r, value);
+                    }
+                }
+            } else {
+                Object value = e.map.createAt(index);
+                e.states[index] = RESOLVED;
+                depth--;
+                if (depth > 0) {
+                    set(stackNext[depth - 1] - 1, value);
+                }
+            }
+        }
+    }
+
+    // returns the value if the entry is already known to the interner,
+    // PENDING if it has been pushed
+    private Object push(Entries e, int index) throws IOException {
+        Object canonical = e.map.canonicalAt(index);
+        if (canonical != null) {
+            e.states[index] = RESOLVED;
+            return canonical;
+        }
+        if (depth == stackEntries.length) {
+            stackEntries = Arrays.copyOf(stackEntries, 2 * depth);
+            stackIndexes = Arrays.copyOf(stackIndexes, 2 * depth);
+            stackNext = Arrays.copyOf(stackNext, 2 * depth);
+        }
+        e.states[index] = RESOLVING;
+        stackEntries[depth] = e;
+        stackIndexes[depth] = index;
+        stackNext[depth] = e.referenceStarts[index];
+        depth++;
+        return PENDING;
+    }
+
+    private void set(int reference, Object value) {
+        Object container = containers[reference];
+        if (container instanceof ConstantMap) {
+            ((ConstantMap) container).setValueAt(slots[reference], value);
+        } else {
+            ((Object[]) container)[slots[reference]] = value;
+        }
+    }
+
+    private Entries entries(ConstantMap map) {
+        Entries e = entries.get(map);
+        if (e == null) {
+            e = new Entries(map);
+            entries.put(map, e);
+        }
+        return e;
+    }
+}
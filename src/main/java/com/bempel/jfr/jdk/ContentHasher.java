@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2016, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.bempel.jfr.jdk;
+
+import jdk.jfr.internal.Type;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Hashes constant pool entries of a chunk by content.
+ * <p>
+ * The encoded bytes of an entry are hashed, except references to other
+ * constant pool entries which are replaced by the hash of the referenced
+ * entry. Ids are local to a chunk, but identical entries get the same hash in
+ * every chunk, so hashes can be used to count distinct entries of a whole
+ * recording.
+ */
+final class ContentHasher {
+    private static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+    // hashed in place of null references and of references back to an
+    // entry being hashed
+    private static final long NULL_HASH = 0x5BD1E9955BD1E995L;
+    private static final long CYCLE_HASH = 0xC6A4A7935BD1E995L;
+    // state of the hash of an entry
+    private static final byte UNKNOWN = 0;
+    private static final byte HASHING = 1;
+    private static final byte HASHED = 2;
+
+    // Entries of a pool. Their hashes are kept by insertion index of the
+    // offsets, so nothing is boxed.
+    private static final class PoolEntries {
+        private final OffsetIndex offsets = new OffsetIndex(false);
+        private long[] hashes = new long[16];
+        private byte[] states = new byte[16];
+
+        void add(long key, long offset) {
+            int index = offsets.indexOf(key);
+            offsets.put(key, offset);
+            if (index >= 0) {
+                states[index] = UNKNOWN;
+            } else if (offsets.size() > hashes.length) {
+                hashes = Arrays.copyOf(hashes, 2 * hashes.length);
+                states = Arrays.copyOf(states, 2 * states.length);
+            }
+        }
+    }
+
+    private final ChunkInput input;
+    private LongMap<Parser> parsers;
+    private List<Type> constantPoolTypes;
+    // by pool type id
+    private final LongMap<PoolEntries> pools = new LongMap<>();
+    private long hash;
+
+    ContentHasher(ChunkInput input, LongMap<Parser> parsers, List<Type> constantPoolTypes) {
+        this.input = input;
+        this.parsers = parsers;
+        this.constantPoolTypes = constantPoolTypes;
+    }
+
+    // parsers of a new metadata event of the chunk, hashes already computed
+    // stay valid as they don't depend on pool indexes
+    void bind(LongMap<Parser> parsers, List<Type> constantPoolTypes) {
+        this.parsers = parsers;
+        this.constantPoolTypes = constantPoolTypes;
+    }
+
+    void add(long typeId, long key, long offset) {
+        PoolEntries pool = pools.get(typeId);
+        if (pool == null) {
+            pool = new PoolEntries();
+            pools.put(typeId, pool);
+        }
+        pool.add(key, offset);
+    }
+
+    /**
+     * Returns the hash of every entry of a pool, in the order entries were
+     * added.
+     */
+    long[] getHashes(long typeId) throws IOException {
+        PoolEntries pool = pools.get(typeId);
+        if (pool == null) {
+            return new long[0];
+        }
+        long[] result = new long[pool.offsets.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = entryHash(typeId, pool, i);
+        }
+        return result;
+    }
+
+    void update(byte b) {
+        hash = (hash ^ (b & 0xFF)) * FNV_PRIME;
+    }
+
+    void update(long l) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            update((byte) (l >>> shift));
+        }
+    }
+
+    // hashes the bytes from a position up to the current one
+    void update(ChunkInput input, long from) throws IOException {
+        long to = input.position();
+        input.position(from);
+        while (input.position() < to) {
+            update(input.readByte());
+        }
+    }
+
+    void reference(int poolIndex, long id) throws IOException {
+        update(entryHash(constantPoolTypes.get(poolIndex).getId(), id));
+    }
+
+    long entryHash(long typeId, long key) throws IOException {
+        PoolEntries pool = pools.get(typeId);
+        int index = pool == null ? -1 : pool.offsets.indexOf(key);
+        if (index < 0) {
+            return NULL_HASH;
+        }
+        return entryHash(typeId, pool, index);
+    }
+
+    // Hashes are computed on first use rather than while the pools are
+    // filled, the hash of an entry includes the hashes of the entries it
+    // references, which can come later in the chunk
+    private long entryHash(long typeId, PoolEntries pool, int index) throws IOException {
+        switch (pool.states[index]) {
+        case HASHED:
+            return pool.hashes[index];
+        case HASHING:
+            return CYCLE_HASH;
+        }
+        pool.states[index] = HASHING;
+        long outerHash = hash;
+        long position = input.position();
+        try {
+            hash = FNV_OFFSET_BASIS;
+            input.position(pool.offsets.offsetAt(index));
+            parsers.get(typeId).hash(input, this);
+            long result = mix(hash);
+            pool.hashes[index] = result;
+            pool.states[index] = HASHED;
+            return result;
+        } finally {
+            if (pool.states[index] == HASHING) {
+                pool.states[index] = UNKNOWN;
+            }
+            hash = outerHash;
+            input.position(position);
+        }
+    }
+
+    // spreads FNV-1a bits, finalizer of MurmurHash3
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2016, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+
+package com.bempel.jfr.jdk;
+
+import jdk.jfr.EventType;
+import jdk.jfr.ValueDescriptor;
+
+/**
+ * Reads a field of type {@code double}, or of another numeric type, of the
+ * events of a type without boxing it.
+ *
+ * @see RecordingFile#doubleAccessor(EventType, String)
+ */
+public final class DoubleFieldAccessor extends AbstractFieldAccessor {
+
+    DoubleFieldAccessor(EventType eventType, String path) {
+        super(eventType, path);
+    }
+
+    @Override
+    void validate(ValueDescriptor field) {
+        switch (field.getTypeName()) {
+        case "double":
+        case "float":
+        case "long":
+        case "int":
+        case "short":
+        case "char":
+        case "byte":
+            return;
+        }
+        throw new IllegalArgumentException("Attempt to get " + field.getTypeName() + " field \"" + path + "\" as double");
+    }
+
+    @Override
+    boolean isDirect(int kind) {
+        return kind != ValueLayout.BOOLEAN;
+    }
+
+    /**
+     * Returns the value of the field in an event, as
+     * {@link RecordedObject#getDouble(String)} would.
+     *
+     * @param event an event of the type of this accessor
+     * @return the value
+     * @throws IllegalArgumentException if the event doesn't have the field
+     */
+    public double getDouble(RecordedEvent event) {
+        int entry = resolve(event).entry;
+        if (entry == -1) {
+            return event.getDouble(path);
+        }
+        long bits = event.getPrimitive(entry);
+        switch (ValueLayout.kind(entry)) {
+        case ValueLayout.DOUBLE:
+            return Double.longBitsToDouble(bits);
+        case ValueLayout.FLOAT:
+            return Float.intBitsToFloat((int) bits);
+        default:
+            return bits;
+        }
+    }
+}
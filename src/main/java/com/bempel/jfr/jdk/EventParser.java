@@ -28,11 +28,8 @@ package com.bempel.jfr.jdk;
 import static jdk.jfr.internal.EventInstrumentation.FIELD_DURATION;
 
 import jdk.jfr.EventType;
-import jdk.jfr.ValueDescriptor;
-import jdk.jfr.internal.consumer.RecordingInput;
 
 import java.io.IOException;
-import java.util.List;
 
 /**
  * Parses an event and returns a {@link RecordedEvent}.
@@ -41,32 +38,89 @@ import java.util.List;
 final class EventParser extends Parser {
     private final Parser[] parsers;
     private final EventType eventType;
-    private final TimeConverter timeConverter;
     private final boolean hasDuration;
-    private final List<ValueDescriptor> valueDescriptors;
+    private final FieldIndex fieldIndex;
+    private final ValueLayout layout;
+    // layout entry of the value of each parser, -1 if the field is skipped
+    private final int[] entries;
+    private final int startTimeIndex;
+    private final int durationIndex;
 
-    EventParser(TimeConverter timeConverter, EventType type, Parser[] parsers) {
-        this.timeConverter = timeConverter;
+    EventParser(EventType type, Parser[] parsers, FieldIndex fieldIndex) {
+        this(type, parsers, null, fieldIndex);
+    }
+
+    EventParser(EventType type, Parser[] parsers, int[] slots, FieldIndex fieldIndex) {
         this.parsers = parsers;
         this.eventType = type;
         this.hasDuration = type.getField(FIELD_DURATION) != null;
-        this.valueDescriptors = type.getFields();
+        this.fieldIndex = fieldIndex;
+        this.layout = new ValueLayout(fieldIndex.getFields());
+        this.entries = new int[parsers.length];
+        for (int i = 0; i < parsers.length; i++) {
+            int slot = slots == null ? i : slots[i];
+            entries[i] = slot < 0 ? -1 : layout.entry(slot);
+        }
+        // startTime and duration are always the first two fields
+        this.startTimeIndex = ValueLayout.index(layout.entry(0));
+        this.durationIndex = hasDuration ? ValueLayout.index(layout.entry(1)) : -1;
     }
 
     @Override
-    public Object parse(RecordingInput input) throws IOException {
-        Object[] values = new Object[parsers.length];
+    public Object parse(ChunkInput input) throws IOException {
+        Object[] values = new Object[layout.objectCount()];
+        long[] primitives = new long[layout.primitiveCount()];
+        decode(input, values, primitives);
+        return create(input, values, primitives);
+    }
+
+    // an event whose values are replaced by each call to parseInto
+    RecordedEvent newView(TimeConverter timeConverter) {
+        return new RecordedEvent(eventType, fieldIndex, new Object[layout.objectCount()], new long[layout.primitiveCount()], layout, 0, 0, timeConverter);
+    }
+
+    // decodes an event into a view, without allocating for primitive values
+    void parseInto(ChunkInput input, RecordedEvent view) throws IOException {
+        long[] primitives = view.getPrimitives();
+        decode(input, view.getObjects(), primitives);
+        TimeConverter timeConverter = input.getTimeConverter();
+        long startTicks = primitives[startTimeIndex];
+        long startTime = timeConverter.convertTimestamp(startTicks);
+        long endTime = hasDuration ? timeConverter.convertTimestamp(startTicks + primitives[durationIndex]) : startTime;
+        view.setTimes(startTime, endTime);
+    }
+
+    private void decode(ChunkInput input, Object[] values, long[] primitives) throws IOException {
         for (int i = 0; i < parsers.length; i++) {
-            values[i] = parsers[i].parse(input);
+            int entry = entries[i];
+            if (entry < 0) {
+                parsers[i].skip(input);
+            } else if (ValueLayout.isPrimitive(entry)) {
+                primitives[ValueLayout.index(entry)] = parsers[i].parsePrimitive(input);
+            } else {
+                values[ValueLayout.index(entry)] = parsers[i].parse(input);
+            }
         }
-        Long startTicks = (Long) values[0];
+    }
+
+    // the event once its fields are decoded
+    Object create(ChunkInput input, Object[] values, long[] primitives) {
+        TimeConverter timeConverter = input.getTimeConverter();
+        long startTicks = primitives[startTimeIndex];
         long startTime = timeConverter.convertTimestamp(startTicks);
         if (hasDuration) {
-            long durationTicks = (Long) values[1];
+            long durationTicks = primitives[durationIndex];
             long endTime = timeConverter.convertTimestamp(startTicks + durationTicks);
-            return new RecordedEvent(eventType, valueDescriptors, values, startTime, endTime, timeConverter);
+            return new RecordedEvent(eventType, fieldIndex, values, primitives, layout, startTime, endTime, timeConverter);
         } else {
-            return new RecordedEvent(eventType, valueDescriptors, values, startTime, startTime, timeConverter);
+            return new RecordedEvent(eventType, fieldIndex, values, primitives, layout, startTime, startTime, timeConverter);
+        }
+    }
+
+    @Override
+    public void skip(ChunkInput input) throws IOException {
+        for (int i = 0; i < parsers.length; i++) {
+            parsers[i].skip(input);
         }
     }
 }
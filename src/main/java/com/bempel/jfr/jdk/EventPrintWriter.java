@@ -50,6 +50,7 @@ abstract class EventPrintWriter extends StructuredWriter {
     protected static final String EVENT_THREAD_FIELD = "eventThread";
 
     private Predicate<EventType> eventFilter = x -> true;
+    private final ParserConfiguration parserConfiguration = new ParserConfiguration();
     private int stackDepth;
 
     // cach that will speed up annotation lookup
@@ -64,7 +65,7 @@ abstract class EventPrintWriter extends StructuredWriter {
     void print(Path source) throws FileNotFoundException, IOException {
         List<RecordedEvent> events = new ArrayList<>(500_000);
         printBegin();
-        try (RecordingFile file = new RecordingFile(source)) {
+        try (RecordingFile file = new RecordingFile(source, parserConfiguration)) {
             while (file.hasMoreEvents()) {
                 RecordedEvent event = file.readEvent();
                 if (acceptEvent(event)) {
@@ -107,6 +108,23 @@ abstract class EventPrintWriter extends StructuredWriter {
         this.stackDepth = stackDepth;
     }
 
+    /**
+     * Sets a profile to fill with the time, characters written and bytes
+     * allocated by this writer, and with the phases of parsing the
+     * recordings it prints.
+     *
+     * @param profile the profile, or {@code null} to not measure anything
+     */
+    @Override
+    public void setProfile(ParserProfile profile) {
+        super.setProfile(profile);
+        parserConfiguration.setProfile(profile);
+    }
+
+    public void setParallelism(int parallelism) {
+        parserConfiguration.setParallelism(parallelism);
+    }
+
     protected Object getValue(RecordedObject object, ValueDescriptor v) {
         ValueType valueType = typeOfValues.get(v);
         if (valueType == null) {
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2016, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+
+package com.bempel.jfr.jdk;
+
+import jdk.jfr.EventType;
+
+/**
+ * Reads a field of the events of a type, resolved once against the
+ * metadata instead of on every access.
+ * <p>
+ * Example
+ *
+ * <pre>
+ * <code>
+ * FieldAccessor&lt;RecordedThread&gt; thread = RecordingFile.accessor(type, "sampledThread");
+ * while (file.hasMoreEvents()) {
+ *   RecordedEvent event = file.readEvent();
+ *   if (event.getEventType().getName().equals(thread.getEventName())) {
+ *     System.out.println(thread.get(event).getJavaName());
+ *   }
+ * }
+ * </code>
+ * </pre>
+ *
+ * @param <T> the type of the value
+ * @see RecordingFile#accessor(EventType, String)
+ */
+public final class FieldAccessor<T> extends AbstractFieldAccessor {
+
+    FieldAccessor(EventType eventType, String path) {
+        super(eventType, path);
+    }
+
+    /**
+     * Returns the value of the field in an event, as
+     * {@link RecordedObject#getValue(String)} would.
+     *
+     * @param event an event of the type of this accessor
+     * @return the value, can be {@code null}
+     * @throws IllegalArgumentException if the event doesn't have the field
+     */
+    public T get(RecordedEvent event) {
+        Resolution r = resolve(event);
+        if (r.slots == null) {
+            return event.getValue(path);
+        }
+        @SuppressWarnings("unchecked")
+        T t = (T) event.getValue(r.slots, path);
+        return t;
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2016, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+
+package com.bempel.jfr.jdk;
+
+import jdk.jfr.ValueDescriptor;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Slots of the fields of a type, shared by all the objects of that type.
+ * <p>
+ * Field names map to the index of the field in the values of an object, and
+ * dotted names such as {@code "thread.group.name"} to the indexes of the
+ * fields to follow. The table of dotted names is built on first use and does
+ * not go through arrays, nor into a type that is already on the path, so
+ * names such as {@code "group.parent.parent.name"} are looked up one object at
+ * a time.
+ * <p>
+ * Typed getters, such as {@link RecordedFrame#getLineNumber()}, read the
+ * slot of their field from an array computed once per type, see
+ * {@link ObjectFactory#typedFields(String)}.
+ */
+final class FieldIndex {
+    private final List<ValueDescriptor> fields;
+    private final Map<String, Integer> indexes;
+    // index of the fields of each struct field, null for other fields
+    private final FieldIndex[] children;
+    // slot of each typed field, -1 if the type doesn't have the field
+    private final int[] typedSlots;
+    private volatile Map<String, int[]> paths;
+
+    private FieldIndex(List<ValueDescriptor> fields, String[] typedFields) {
+        this.fields = fields;
+        this.indexes = new HashMap<>();
+        for (int i = 0; i < fields.size(); i++) {
+            // the first field wins, like a linear search would
+            indexes.putIfAbsent(fields.get(i).getName(), i);
+        }
+        this.children = new FieldIndex[fields.size()];
+        this.typedSlots = new int[typedFields.length];
+        for (int i = 0; i < typedFields.length; i++) {
+            typedSlots[i] = indexOf(typedFields[i]);
+        }
+    }
+
+    /**
+     * Returns the index of a type, created and registered with the indexes
+     * of the types of its struct fields if it doesn't exist yet.
+     *
+     * @param typeId id of the type
+     * @param typeName name of the type
+     * @param fields fields of the type
+     * @param types indexes by type id
+     */
+    static FieldIndex of(long typeId, String typeName, List<ValueDescriptor> fields, LongMap<FieldIndex> types) {
+        FieldIndex index = types.get(typeId);
+        if (index == null) {
+            index = new FieldIndex(fields, ObjectFactory.typedFields(typeName));
+            // registered before its children, struct types can be recursive
+            types.put(typeId, index);
+            index.addChildren(types);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the index of the fields of an event type, which are not
+     * registered by type id as they can be projected.
+     *
+     * @param fields fields of the event type that are decoded
+     * @param types indexes by type id
+     */
+    static FieldIndex ofEvent(List<ValueDescriptor> fields, LongMap<FieldIndex> types) {
+        FieldIndex index = new FieldIndex(fields, RecordedEvent.TYPED_FIELDS);
+        index.addChildren(types);
+        return index;
+    }
+
+    private void addChildren(LongMap<FieldIndex> types) {
+        for (int i = 0; i < children.length; i++) {
+            ValueDescriptor v = fields.get(i);
+            if (!v.getFields().isEmpty()) {
+                children[i] = of(v.getTypeId(), v.getTypeName(), v.getFields(), types);
+            }
+        }
+    }
+
+    List<ValueDescriptor> getFields() {
+        return fields;
+    }
+
+    /**
+     * Returns the index of a field, or -1 if there is no field with that name.
+     */
+    int indexOf(String name) {
+        Integer index = indexes.get(name);
+        return index != null ? index : -1;
+    }
+
+    /**
+     * Returns the index of the fields of a struct field, or {@code null} if
+     * the field is not a struct.
+     */
+    FieldIndex child(int index) {
+        return children[index];
+    }
+
+    /**
+     * Returns the index of a typed field, or -1 if the type doesn't have it.
+     */
+    int typedSlot(int typedField) {
+        return typedSlots[typedField];
+    }
+
+    /**
+     * Returns the indexes of the fields to follow for a dotted name, or
+     * {@code null} if the name is not in the table.
+     */
+    int[] path(String name) {
+        Map<String, int[]> p = paths;
+        if (p == null) {
+            // racy but idempotent, the table is immutable once published
+            p = new HashMap<>();
+            Set<FieldIndex> visiting = Collections.newSetFromMap(new IdentityHashMap<>());
+            visiting.add(this);
+            addPaths(p, "", new int[0], visiting);
+            paths = p = Collections.unmodifiableMap(p);
+        }
+        return p.get(name);
+    }
+
+    private void addPaths(Map<String, int[]> p, String prefix, int[] indexes, Set<FieldIndex> visiting) {
+        for (int i = 0; i < children.length; i++) {
+            FieldIndex child = children[i];
+            ValueDescriptor v = fields.get(i);
+            if (child == null || v.isArray() || !visiting.add(child)) {
+                continue;
+            }
+            String childPrefix = prefix + v.getName() + ".";
+            int[] childIndexes = Arrays.copyOf(indexes, indexes.length + 1);
+            childIndexes[indexes.length] = i;
+            for (int j = 0; j < child.fields.size(); j++) {
+                String name = childPrefix + child.fields.get(j).getName();
+                int[] path = Arrays.copyOf(childIndexes, childIndexes.length + 1);
+                path[childIndexes.length] = j;
+                p.putIfAbsent(name, path);
+            }
+            child.addPaths(p, childPrefix, childIndexes, visiting);
+            visiting.remove(child);
+        }
+    }
+
+    /**
+     * Returns the descriptor of a field or of a dotted name in the table, or
+     * {@code null} if it is not found.
+     */
+    ValueDescriptor descriptor(String name) {
+        int index = indexOf(name);
+        if (index >= 0) {
+            return fields.get(index);
+        }
+        int[] path = name.indexOf('.') > 0 ? path(name) : null;
+        if (path == null) {
+            return null;
+        }
+        FieldIndex struct = this;
+        for (int i = 0; i < path.length - 1; i++) {
+            struct = struct.children[path[i]];
+        }
+        return struct.fields.get(path[path.length - 1]);
+    }
+}
@@ -25,47 +25,192 @@
 
 package com.bempel.jfr.jdk;
 
-import java.util.HashMap;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 /**
  * Commonly used data structure for looking up objects given an id (long value)
  *
- * TODO: Implement without using Map and Long objects, to minimize allocation
+ * Keys and objects are stored in insertion order in two arrays, and an open
+ * addressing table with linear probing maps a key to its index, so neither
+ * {@code put} nor {@code get} allocates. Iteration follows insertion order.
  *
  * @param <T>
  */
 public final class LongMap<T> implements Iterable<T> {
-    private final HashMap<Long, T> map;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private long[] keys;
+    private Object[] objects;
+    // index + 1 of the entry in keys and objects, 0 for a free slot
+    private int[] table;
+    private int mask;
+    private int size;
 
     LongMap() {
-        map = new HashMap<>(101);
+        keys = new long[INITIAL_CAPACITY];
+        objects = new Object[INITIAL_CAPACITY];
+        table = new int[2 * INITIAL_CAPACITY];
+        mask = table.length - 1;
     }
 
     void put(long id, T object) {
-        map.put(id, object);
+        int slot = slot(id);
+        int index;
+        while ((index = table[slot]) != 0) {
+            if (keys[index - 1] == id) {
+                objects[index - 1] = object;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size == keys.length) {
+            grow();
+            slot = slot(id);
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+        }
+        keys[size] = id;
+        objects[size] = object;
+        table[slot] = ++size;
     }
 
+    @SuppressWarnings("unchecked")
     T get(long id) {
-        return map.get(id);
+        int index = indexOf(id);
+        return index < 0 ? null : (T) objects[index];
+    }
+
+    // insertion index of a key, -1 if absent
+    int indexOf(long id) {
+        int slot = slot(id);
+        int index;
+        while ((index = table[slot]) != 0) {
+            if (keys[index - 1] == id) {
+                return index - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    // keep the table at most half full
+    private void grow() {
+        keys = Arrays.copyOf(keys, 2 * keys.length);
+        objects = Arrays.copyOf(objects, 2 * objects.length);
+        table = new int[2 * keys.length];
+        mask = table.length - 1;
+        for (int i = 0; i < size; i++) {
+            int slot = slot(keys[i]);
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = i + 1;
+        }
+    }
+
+    private int slot(long id) {
+        // Fibonacci hashing, keys are often small consecutive ids
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    long keyAt(int index) {
+        return keys[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    T valueAt(int index) {
+        return (T) objects[index];
+    }
+
+    void setValueAt(int index, T object) {
+        objects[index] = object;
     }
 
     @Override
     public Iterator<T> iterator() {
-        return map.values().iterator();
+        return new Iterator<T>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public T next() {
+                if (index >= size) {
+                    throw new NoSuchElementException();
+                }
+                return valueAt(index++);
+            }
+        };
     }
 
     Iterator<Long> keys() {
-        return map.keySet().iterator();
+        return new Iterator<Long>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public Long next() {
+                if (index >= size) {
+                    throw new NoSuchElementException();
+                }
+                return keys[index++];
+            }
+        };
     }
 
     public int size() {
-        return map.size();
+        return size;
     }
 
     public Set<Map.Entry<Long, T>> entrySet() {
-        return map.entrySet();
+        return new AbstractSet<Map.Entry<Long, T>>() {
+            @Override
+            public Iterator<Map.Entry<Long, T>> iterator() {
+                return new Iterator<Map.Entry<Long, T>>() {
+                    private int index;
+
+                    @Override
+                    public boolean hasNext() {
+                        return index < size;
+                    }
+
+                    @Override
+                    public Map.Entry<Long, T> next() {
+                        if (index >= size) {
+                            throw new NoSuchElementException();
+                        }
+                        int i = index++;
+                        // setValue writes through to the map, like the
+                        // entries of a HashMap
+                        return new AbstractMap.SimpleEntry<Long, T>(keys[i], valueAt(i)) {
+                            @Override
+                            public T setValue(T value) {
+                                setValueAt(i, value);
+                                return super.setValue(value);
+                            }
+                        };
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
     }
 }
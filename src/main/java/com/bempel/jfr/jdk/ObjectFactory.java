@@ -25,11 +25,8 @@
 
 package com.bempel.jfr.jdk;
 
-import jdk.jfr.ValueDescriptor;
 import jdk.jfr.internal.Type;
 
-import java.util.List;
-
 /**
  * Abstract factory for creating specialized types
  */
@@ -40,35 +37,64 @@ abstract class ObjectFactory<T> {
     final static String STACK_FRAME_VERSION_1 = TYPE_PREFIX_VERSION_1 + "StackFrame";
     final static String STACK_FRAME_VERSION_2 = TYPE_PREFIX_VERSION_2 + "StackFrame";
 
-    public static ObjectFactory<?> create(Type type, TimeConverter timeConverter) {
+    private static final String[] NO_TYPED_FIELDS = new String[0];
+
+    public static ObjectFactory<?> create(Type type, FieldIndex fieldIndex, TimeConverter timeConverter) {
         switch (type.getName()) {
         case "java.lang.Thread":
-            return RecordedThread.createFactory(type, timeConverter);
+            return RecordedThread.createFactory(fieldIndex, timeConverter);
         case TYPE_PREFIX_VERSION_1 + "StackFrame":
         case TYPE_PREFIX_VERSION_2 + "StackFrame":
-            return RecordedFrame.createFactory(type, timeConverter);
+            return RecordedFrame.createFactory(fieldIndex, timeConverter);
         case TYPE_PREFIX_VERSION_1 + "Method":
         case TYPE_PREFIX_VERSION_2 + "Method":
-            return RecordedMethod.createFactory(type, timeConverter);
+            return RecordedMethod.createFactory(fieldIndex, timeConverter);
         case TYPE_PREFIX_VERSION_1 + "ThreadGroup":
         case TYPE_PREFIX_VERSION_2 + "ThreadGroup":
-            return RecordedThreadGroup.createFactory(type, timeConverter);
+            return RecordedThreadGroup.createFactory(fieldIndex, timeConverter);
         case TYPE_PREFIX_VERSION_1 + "StackTrace":
         case TYPE_PREFIX_VERSION_2 + "StackTrace":
-            return RecordedStackTrace.createFactory(type, timeConverter);
+            return RecordedStackTrace.createFactory(fieldIndex, timeConverter);
         case TYPE_PREFIX_VERSION_1 + "ClassLoader":
         case TYPE_PREFIX_VERSION_2 + "ClassLoader":
-            return RecordedClassLoader.createFactory(type, timeConverter);
+            return RecordedClassLoader.createFactory(fieldIndex, timeConverter);
         case "java.lang.Class":
-            return RecordedClass.createFactory(type, timeConverter);
+            return RecordedClass.createFactory(fieldIndex, timeConverter);
         }
         return null;
     }
 
-    private final List<ValueDescriptor> valueDescriptors;
+    // names of the fields read by the typed getters of the class created for
+    // a type, the getters pass the index of the name to getTyped
+    static String[] typedFields(String typeName) {
+        switch (typeName) {
+        case "java.lang.Thread":
+            return RecordedThread.TYPED_FIELDS;
+        case TYPE_PREFIX_VERSION_1 + "StackFrame":
+        case TYPE_PREFIX_VERSION_2 + "StackFrame":
+            return RecordedFrame.TYPED_FIELDS;
+        case TYPE_PREFIX_VERSION_1 + "Method":
+        case TYPE_PREFIX_VERSION_2 + "Method":
+            return RecordedMethod.TYPED_FIELDS;
+        case TYPE_PREFIX_VERSION_1 + "ThreadGroup":
+        case TYPE_PREFIX_VERSION_2 + "ThreadGroup":
+            return RecordedThreadGroup.TYPED_FIELDS;
+        case TYPE_PREFIX_VERSION_1 + "StackTrace":
+        case TYPE_PREFIX_VERSION_2 + "StackTrace":
+            return RecordedStackTrace.TYPED_FIELDS;
+        case TYPE_PREFIX_VERSION_1 + "ClassLoader":
+        case TYPE_PREFIX_VERSION_2 + "ClassLoader":
+            return RecordedClassLoader.TYPED_FIELDS;
+        case "java.lang.Class":
+            return RecordedClass.TYPED_FIELDS;
+        }
+        return NO_TYPED_FIELDS;
+    }
+
+    private final FieldIndex fieldIndex;
 
-    ObjectFactory(Type type) {
-        this.valueDescriptors = type.getFields();
+    ObjectFactory(FieldIndex fieldIndex) {
+        this.fieldIndex = fieldIndex;
     }
 
     T createObject(long id, Object value) {
@@ -76,10 +102,10 @@ abstract class ObjectFactory<T> {
             return null;
         }
         if (value instanceof Object[]) {
-            return createTyped(valueDescriptors, id, (Object[]) value);
+            return createTyped(fieldIndex, id, (Object[]) value);
         }
         throw new InternalError("Object factory must have struct type");
     }
 
-    abstract T createTyped(List<ValueDescriptor> valueDescriptors, long id, Object[] values);
+    abstract T createTyped(FieldIndex fieldIndex, long id, Object[] values);
 }
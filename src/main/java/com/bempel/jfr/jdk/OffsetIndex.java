@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2016, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.bempel.jfr.jdk;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Positions of the entries of a lazy constant pool, by key.
+ * <p>
+ * Like {@link LongMap}, keys and positions are stored in insertion order and
+ * an open addressing table maps a key to its index, but everything is kept in
+ * {@link ByteBuffer}s, on heap or, for pools too large for the heap, in direct
+ * buffers that are released with the chunk.
+ */
+final class OffsetIndex {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int ENTRY_SIZE = 2 * Long.BYTES;
+
+    private final boolean direct;
+    // key and position of each entry
+    private ByteBuffer entries;
+    // index + 1 of the entry, 0 for a free slot
+    private ByteBuffer table;
+    private int capacity;
+    private int mask;
+    private int size;
+
+    OffsetIndex(boolean direct) {
+        this.direct = direct;
+        this.capacity = INITIAL_CAPACITY;
+        this.entries = allocate(capacity * ENTRY_SIZE);
+        this.table = allocate(2 * capacity * Integer.BYTES);
+        this.mask = 2 * capacity - 1;
+    }
+
+    private ByteBuffer allocate(int bytes) {
+        return direct ? ByteBuffer.allocateDirect(bytes) : ByteBuffer.allocate(bytes);
+    }
+
+    void put(long key, long offset) {
+        int slot = slot(key);
+        int index;
+        while ((index = table.getInt(slot * Integer.BYTES)) != 0) {
+            if (keyAt(index - 1) == key) {
+                entries.putLong((index - 1) * ENTRY_SIZE + Long.BYTES, offset);
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size == capacity) {
+            grow();
+            slot = slot(key);
+            while (table.getInt(slot * Integer.BYTES) != 0) {
+                slot = (slot + 1) & mask;
+            }
+        }
+        entries.putLong(size * ENTRY_SIZE, key);
+        entries.putLong(size * ENTRY_SIZE + Long.BYTES, offset);
+        table.putInt(slot * Integer.BYTES, ++size);
+    }
+
+    /**
+     * Returns the position of an entry, or -1 if there is no entry for the
+     * key.
+     */
+    long get(long key) {
+        int index = indexOf(key);
+        return index < 0 ? -1 : offsetAt(index);
+    }
+
+    // insertion index of a key, -1 if absent
+    int indexOf(long key) {
+        int slot = slot(key);
+        int index;
+        while ((index = table.getInt(slot * Integer.BYTES)) != 0) {
+            if (keyAt(index - 1) == key) {
+                return index - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    long keyAt(int index) {
+        return entries.getLong(index * ENTRY_SIZE);
+    }
+
+    long offsetAt(int index) {
+        return entries.getLong(index * ENTRY_SIZE + Long.BYTES);
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void grow() {
+        if (capacity > Integer.MAX_VALUE / (2 * ENTRY_SIZE)) {
+            throw new IllegalStateException("Too many constant pool entries");
+        }
+        capacity *= 2;
+        ByteBuffer larger = allocate(capacity * ENTRY_SIZE);
+        entries.clear();
+        larger.put(entries);
+        entries = larger;
+        table = allocate(2 * capacity * Integer.BYTES);
+        mask = 2 * capacity - 1;
+        for (int i = 0; i < size; i++) {
+            int slot = slot(keyAt(i));
+            while (table.getInt(slot * Integer.BYTES) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table.putInt(slot * Integer.BYTES, i + 1);
+        }
+    }
+
+    private int slot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+}
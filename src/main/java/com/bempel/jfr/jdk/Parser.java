@@ -25,21 +25,57 @@
 
 package com.bempel.jfr.jdk;
 
-import jdk.jfr.internal.consumer.RecordingInput;
-
 import java.io.IOException;
 
 /**
- * Base class for parsing data from a {@link RecordingInput}.
+ * Base class for parsing data from a {@link ChunkInput}.
  */
 abstract class Parser {
     /**
-     * Parses data from a {@link RecordingInput} and return an object.
+     * Parses data from a {@link ChunkInput} and return an object.
      *
      * @param input input to read from
      * @return an object
      * @throws IOException if operation couldn't be completed due to I/O
      *         problems
      */
-    abstract Object parse(RecordingInput input) throws IOException;
+    abstract Object parse(ChunkInput input) throws IOException;
+
+    /**
+     * Skips data from a {@link ChunkInput} without creating any object.
+     *
+     * @param input input to read from
+     * @throws IOException if operation couldn't be completed due to I/O
+     *         problems
+     */
+    abstract void skip(ChunkInput input) throws IOException;
+
+    /**
+     * Parses a primitive value from a {@link ChunkInput} without boxing it.
+     * The value is encoded as described by {@link ValueLayout}.
+     *
+     * @param input input to read from
+     * @return the value
+     * @throws IOException if operation couldn't be completed due to I/O
+     *         problems
+     */
+    long parsePrimitive(ChunkInput input) throws IOException {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " doesn't parse primitive values");
+    }
+
+    /**
+     * Hashes data from a {@link ChunkInput} without creating any object.
+     * References to constant pool entries are hashed by content, see
+     * {@link ContentHasher}.
+     *
+     * @param input input to read from
+     * @param hasher hasher to update
+     * @throws IOException if operation couldn't be completed due to I/O
+     *         problems
+     */
+    void hash(ChunkInput input, ContentHasher hasher) throws IOException {
+        long from = input.position();
+        skip(input);
+        hasher.update(input, from);
+    }
 }
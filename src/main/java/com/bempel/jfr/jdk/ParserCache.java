@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2016, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.bempel.jfr.jdk;
+
+import jdk.jfr.internal.MetadataDescriptor;
+import jdk.jfr.internal.consumer.RecordingInput;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Parsers built for the metadata seen so far in a recording.
+ * <p>
+ * Chunks of a continuous recording almost always carry identical metadata.
+ * The metadata event is fingerprinted by its content, leaving out the
+ * timestamps and the metadata id, and the parsers built for it are shared by
+ * every chunk with the same fingerprint, including chunks parsed concurrently.
+ */
+final class ParserCache {
+    private static final long METADATA_TYPE_ID = 0;
+
+    private final ParserConfiguration configuration;
+    private final Map<ByteBuffer, ParserFactory> factories = new HashMap<>();
+    private final SymbolTable symbols;
+
+    ParserCache(ParserConfiguration configuration) {
+        this.configuration = configuration;
+        this.symbols = configuration.isCompactSymbols() ? new SymbolTable() : null;
+    }
+
+    /**
+     * Returns the parsers for the metadata event at a position of a chunk.
+     *
+     * @param recording input of the recording file, used to read metadata
+     *        that has not been seen yet
+     * @param metadataStart absolute position of the metadata event
+     * @param input the chunk
+     */
+    ParserFactory getParserFactory(RecordingInput recording, long metadataStart, ChunkInput input) throws IOException {
+        ParserProfile profile = configuration.getProfile();
+        long startNanos = profile != null ? System.nanoTime() : 0;
+        long startAllocated = profile != null ? profile.allocatedBytes() : 0;
+        ByteBuffer fingerprint = fingerprint(metadataStart, input);
+        synchronized (this) {
+            ParserFactory factory = factories.get(fingerprint);
+            if (factory == null) {
+                MetadataDescriptor metadata;
+                // MetadataReader only accepts a RecordingInput, which is shared by
+                // all the chunks when they are parsed concurrently
+                synchronized (recording) {
+                    metadata = readMetadata(recording, metadataStart);
+                }
+                if (profile != null) {
+                    profile.record(ParserProfile.Phase.METADATA, startNanos, startAllocated, fingerprint.remaining());
+                    startNanos = System.nanoTime();
+                    startAllocated = profile.allocatedBytes();
+                }
+                factory = new ParserFactory(metadata, configuration, symbols);
+                // the key must not keep the chunk mapped
+                ByteBuffer key = ByteBuffer.allocate(fingerprint.remaining());
+                key.put(fingerprint.duplicate()).flip();
+                factories.put(key, factory);
+                if (profile != null) {
+                    profile.record(ParserProfile.Phase.PARSERS, startNanos, startAllocated, 0);
+                }
+            } else if (profile != null) {
+                profile.record(ParserProfile.Phase.METADATA, startNanos, startAllocated, fingerprint.remaining());
+            }
+            return factory;
+        }
+    }
+
+    // same as ChunkHeader.readMetadata(), which only knows the metadata
+    // position the chunk had when its header was read
+    static MetadataDescriptor readMetadata(RecordingInput recording, long metadataStart) throws IOException {
+        recording.position(metadataStart);
+        recording.readInt(); // size
+        long id = recording.readLong(); // event type id
+        if (id != METADATA_TYPE_ID) {
+            throw new IOException("Expected metadata event. Type id=" + id + ", should have been " + METADATA_TYPE_ID);
+        }
+        recording.readLong(); // start time
+        recording.readLong(); // duration
+        recording.readLong(); // metadata id
+        return MetadataDescriptor.read(recording);
+    }
+
+    // the metadata event without its timestamps and id, a view of the chunk
+    static ByteBuffer fingerprint(long metadataStart, ChunkInput input) throws IOException {
+        long position = input.position();
+        try {
+            input.position(metadataStart);
+            int size = input.readInt();
+            input.readLong(); // type id
+            input.readLong(); // start time
+            input.readLong(); // duration
+            input.readLong(); // metadata id
+            return input.slice(input.position(), metadataStart + size);
+        } finally {
+            input.position(position);
+        }
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2016, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.bempel.jfr.jdk;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Options controlling how a {@link RecordingFile} parses a recording.
+ * <p>
+ * A configuration must not be modified once it has been used to open a
+ * recording file.
+ */
+public final class ParserConfiguration {
+    private int parallelism = 1;
+    private boolean lazyConstantPools;
+    private boolean offHeapConstantPools;
+    private boolean constantPoolsOnly;
+    private boolean contentHashes;
+    private boolean internConstantPools;
+    private boolean compactSymbols;
+    private ParserProfile profile;
+    private int retainedChunks = Integer.MAX_VALUE;
+    private ChunkListener chunkListener;
+    private Set<String> acceptedEvents;
+    private Set<String> acceptedConstantPools;
+    private final Map<String, Set<String>> fieldProjections = new HashMap<>();
+
+    /**
+     * Sets the number of chunks that are parsed concurrently.
+     * <p>
+     * With a value greater than one, chunk boundaries are found up front and
+     * chunks are parsed, events included, on a dedicated
+     * {@link java.util.concurrent.ForkJoinPool}. Events are still returned in
+     * file order.
+     * <p>
+     * Up to {@code 2 * parallelism} chunks are parsed ahead of the reader.
+     * Each of them keeps parsing until two batches of 10,000 decoded events
+     * wait for the reader, and the chunk being read also holds its current
+     * batch. Memory then grows with the parallelism, not with the size of
+     * chunks.
+     *
+     * @param parallelism number of chunks parsed concurrently, {@code 1} to
+     *        parse chunks one at a time on the reading thread
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1, was " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets whether constant pools are decoded on demand.
+     * <p>
+     * A lazy chunk only indexes the position of each constant pool entry when
+     * it is opened. An entry is decoded and resolved the first time an event
+     * or another entry references it, so the time to open a chunk and the
+     * heap used by its pools depend on what is read rather than on the size
+     * of the pools.
+     *
+     * @param lazyConstantPools {@code true} to decode constant pool entries on
+     *        demand, {@code false} to decode all of them when a chunk is opened
+     */
+    public void setLazyConstantPools(boolean lazyConstantPools) {
+        this.lazyConstantPools = lazyConstantPools;
+    }
+
+    boolean isLazyConstantPools() {
+        return lazyConstantPools || offHeapConstantPools;
+    }
+
+    /**
+     * Sets whether constant pool entries are kept off heap, in encoded form.
+     * <p>
+     * Implies lazy constant pools. Entries stay in the memory mapping of the
+     * chunk, the index of their positions is held in direct buffers, and an
+     * entry is decoded every time it is referenced instead of being kept on
+     * heap. A {@link RecordedStackTrace} and its frames are then only
+     * reachable from the events that reference them, and everything is
+     * released when the chunk is dropped.
+     *
+     * @param offHeapConstantPools {@code true} to keep constant pool entries
+     *        off heap
+     */
+    public void setOffHeapConstantPools(boolean offHeapConstantPools) {
+        this.offHeapConstantPools = offHeapConstantPools;
+    }
+
+    boolean isOffHeapConstantPools() {
+        return offHeapConstantPools;
+    }
+
+    /**
+     * Sets whether only the metadata and constant pools of chunks are parsed.
+     * <p>
+     * The event section of a chunk is not read at all. Chunks are then
+     * iterated with {@link RecordingFile#hasMoreChunks()} and
+     * {@link RecordingFile#readChunk()}, and the recording file has no events.
+     *
+     * @param constantPoolsOnly {@code true} to skip events, {@code false} to
+     *        read them
+     */
+    public void setConstantPoolsOnly(boolean constantPoolsOnly) {
+        this.constantPoolsOnly = constantPoolsOnly;
+    }
+
+    boolean isConstantPoolsOnly() {
+        return constantPoolsOnly;
+    }
+
+    /**
+     * Sets whether constant pool entries can be hashed by content.
+     * <p>
+     * The position of every entry is recorded when a chunk is opened, and
+     * {@link ChunkParser#getContentHashes(long)} hashes the encoded bytes of
+     * the entries of a pool, references to other entries being replaced by
+     * the hash of the referenced entry. Identical entries of different chunks
+     * get the same hash.
+     *
+     * @param contentHashes {@code true} to allow hashing entries
+     */
+    public void setContentHashes(boolean contentHashes) {
+        this.contentHashes = contentHashes;
+    }
+
+    boolean isContentHashes() {
+        return contentHashes;
+    }
+
+    /**
+     * Sets whether constants describing code are shared by all the chunks of
+     * the recording.
+     * <p>
+     * Classes, methods, modules, packages, symbols and stack traces with the
+     * same content in different chunks are then the same instance, so the
+     * heap they use depends on the amount of distinct code rather than on the
+     * number of chunks. Content is compared with a 64 bit hash, see
+     * {@link #setContentHashes(boolean)}. The recording-wide id of an
+     * interned value is returned by
+     * {@link RecordingFile#getInternedId(Object)}, and also by
+     * {@link RecordedClass#getId()}.
+     *
+     * @param internConstantPools {@code true} to share constants between
+     *        chunks
+     */
+    public void setInternConstantPools(boolean internConstantPools) {
+        this.internConstantPools = internConstantPools;
+    }
+
+    boolean isInternConstantPools() {
+        return internConstantPools;
+    }
+
+    /**
+     * Sets whether symbols are kept in a compact table instead of as strings.
+     * <p>
+     * Entries of the {@code jdk.types.Symbol} pool, the names and descriptors
+     * of classes and methods, are stored once per recording as UTF-8 bytes
+     * in a single array. Getters such as {@link RecordedMethod#getName()}
+     * still return a {@code String}, decoded on each call, and
+     * {@link RecordedObject#getSymbol(String)} returns the {@link Symbol}
+     * itself, which can be used as a key without decoding it.
+     *
+     * @param compactSymbols {@code true} to keep symbols in a compact table
+     */
+    public void setCompactSymbols(boolean compactSymbols) {
+        this.compactSymbols = compactSymbols;
+    }
+
+    boolean isCompactSymbols() {
+        return compactSymbols;
+    }
+
+    /**
+     * Sets a profile to fill with the time, bytes read and bytes allocated by
+     * each phase of parsing.
+     *
+     * @param profile the profile, or {@code null} to not measure anything
+     */
+    public void setProfile(ParserProfile profile) {
+        this.profile = profile;
+    }
+
+    ParserProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Sets how many of the last chunks read are kept by
+     * {@link RecordingFile#getChunks()}.
+     * <p>
+     * A kept chunk holds its metadata, parsers and constant pools until the
+     * file is closed. With {@code 0}, a chunk can be garbage collected as soon
+     * as its events are read, and its pools are given to a
+     * {@link ChunkListener} instead.
+     *
+     * @param retainedChunks number of chunks kept, {@code 0} to keep none,
+     *        {@link Integer#MAX_VALUE}, the default, to keep all
+     */
+    public void setRetainedChunks(int retainedChunks) {
+        if (retainedChunks < 0) {
+            throw new IllegalArgumentException("Retained chunks can't be negative, was " + retainedChunks);
+        }
+        this.retainedChunks = retainedChunks;
+    }
+
+    int getRetainedChunks() {
+        return retainedChunks;
+    }
+
+    /**
+     * Sets a listener called with every chunk once its constant pools are
+     * read, before its events are returned.
+     *
+     * @param chunkListener the listener, or {@code null} for none
+     */
+    public void setChunkListener(ChunkListener chunkListener) {
+        this.chunkListener = chunkListener;
+    }
+
+    ChunkListener getChunkListener() {
+        return chunkListener;
+    }
+
+    /**
+     * Restricts the events that are parsed to the given event types.
+     * <p>
+     * Events of other types are skipped using their size only, their fields
+     * are not decoded and no {@link RecordedEvent} is created for them.
+     *
+     * @param eventNames names of the event types to read, for instance
+     *        {@code "jdk.ExecutionSample"}, or {@code null} to read all events
+     */
+    public void setAcceptedEvents(Collection<String> eventNames) {
+        this.acceptedEvents = eventNames == null ? null : new HashSet<>(eventNames);
+    }
+
+    boolean isAcceptedEvent(String eventName) {
+        return acceptedEvents == null || acceptedEvents.contains(eventName);
+    }
+
+    /**
+     * Restricts the constant pools that are read to the given types, and the
+     * pools their entries reference.
+     * <p>
+     * Entries of other pools are skipped while walking the checkpoints, they
+     * are neither decoded nor indexed, and these pools stay empty.
+     *
+     * @param poolNames names of the constant pool types to read, for instance
+     *        {@code "jdk.types.Symbol"}, or {@code null} to read all pools
+     */
+    public void setAcceptedConstantPools(Collection<String> poolNames) {
+        this.acceptedConstantPools = poolNames == null ? null : new HashSet<>(poolNames);
+    }
+
+    Set<String> getAcceptedConstantPools() {
+        return acceptedConstantPools;
+    }
+
+    /**
+     * Restricts the fields that are decoded for an event type.
+     * <p>
+     * Other fields are skipped without creating any object, and events of
+     * that type only hold the projected fields, see
+     * {@link RecordedEvent#getFields()}. The {@code startTime} and
+     * {@code duration} fields are always kept.
+     *
+     * @param eventName name of the event type, for instance
+     *        {@code "jdk.ExecutionSample"}
+     * @param fieldNames names of the fields to decode, or {@code null} to
+     *        decode all fields
+     */
+    public void setFieldProjection(String eventName, Collection<String> fieldNames) {
+        if (fieldNames == null) {
+            fieldProjections.remove(eventName);
+        } else {
+            fieldProjections.put(eventName, new HashSet<>(fieldNames));
+        }
+    }
+
+    Set<String> getFieldProjection(String eventName) {
+        return fieldProjections.get(eventName);
+    }
+}
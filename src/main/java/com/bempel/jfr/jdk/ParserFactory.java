@@ -27,52 +27,160 @@ package com.bempel.jfr.jdk;
 
 import jdk.jfr.EventType;
 import jdk.jfr.ValueDescriptor;
+import jdk.jfr.internal.EventInstrumentation;
 import jdk.jfr.internal.MetadataDescriptor;
 import jdk.jfr.internal.PrivateAccess;
 import jdk.jfr.internal.Type;
-import jdk.jfr.internal.consumer.RecordingInput;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Objects;
+import java.util.Set;
 
 /**
  * Class that create parsers suitable for reading events and constant pools
+ *
+ * The parsers don't hold any chunk state. Constant pools and the time
+ * converter of the chunk being parsed are looked up through the
+ * {@link ChunkInput}, so the same parsers can be used for every chunk that
+ * has the same metadata.
  */
 final class ParserFactory {
+    // EventInstrumentation.FIELD_START_TIME is not public
+    private static final String FIELD_START_TIME = "startTime";
     private final LongMap<Parser> parsers = new LongMap<>();
-    private final TimeConverter timeConverter;
     private final LongMap<Type> types = new LongMap<>();
-    private final LongMap<ConstantMap> constantPools;
-
-    public ParserFactory(MetadataDescriptor metadata, TimeConverter timeConverter) throws IOException {
-        this.constantPools = new LongMap<>();
-        this.timeConverter = timeConverter;
+    // field indexes of the types with fields, shared by all their objects
+    private final LongMap<FieldIndex> fieldIndexes = new LongMap<>();
+    // index of the constant pool of a type in the pools bound to a ChunkInput
+    private final LongMap<Integer> constantPoolIndexes = new LongMap<>();
+    private final List<Type> constantPoolTypes = new ArrayList<>();
+    // ids of the constant pool types to read, null to read all of them
+    private final Set<Long> readConstantPools;
+    private final MetadataDescriptor metadata;
+    private final ParserConfiguration configuration;
+    // compact symbols only, shared by the chunks of the recording
+    private final SymbolTable symbols;
+
+    public ParserFactory(MetadataDescriptor metadata, ParserConfiguration configuration, SymbolTable symbols) throws IOException {
+        this.metadata = metadata;
+        this.configuration = configuration;
+        this.symbols = symbols;
         for (Type t : metadata.getTypes()) {
             types.put(t.getId(), t);
         }
+        for (Type t : types) {
+            if (!t.getFields().isEmpty()) {
+                FieldIndex.of(t.getId(), t.getName(), t.getFields(), fieldIndexes);
+            }
+        }
         for (Type t : types) {
             if (!t.getFields().isEmpty()) { // Avoid primitives
                 CompositeParser cp = createCompositeParser(t);
                 if (t.isSimpleType()) { // Reduce to nested parser
                    parsers.put(t.getId(), cp.parsers[0]);
                 }
+                if (symbols != null && isSymbolType(t) && cp.parsers[0] instanceof StringParser) {
+                    parsers.put(t.getId(), new SymbolParser((StringParser) cp.parsers[0], symbols));
+                }
 
             }
         }
-        // Override event types with event parsers
+        // Override event types with event parsers, rejected events keep
+        // their composite parser and are skipped by the chunk parser
         for (EventType t : metadata.getEventTypes()) {
-            parsers.put(t.getId(), createEventParser(t));
+            if (!configuration.isConstantPoolsOnly() && configuration.isAcceptedEvent(t.getName())) {
+                parsers.put(t.getId(), createEventParser(t));
+            }
+        }
+        Set<String> acceptedPools = configuration.getAcceptedConstantPools();
+        if (acceptedPools != null) {
+            readConstantPools = new HashSet<>();
+            Set<Long> visited = new HashSet<>();
+            for (Type t : types) {
+                if (acceptedPools.contains(t.getName())) {
+                    readConstantPools.add(t.getId());
+                    addReferencedConstantPools(t, visited);
+                }
+            }
+        } else {
+            readConstantPools = null;
+        }
+    }
+
+    // pools that must be read to resolve the values of a type
+    private void addReferencedConstantPools(Type type, Set<Long> visited) {
+        if (!visited.add(type.getId())) {
+            return;
+        }
+        if (type.getName().equals("java.lang.String")) {
+            // strings may be stored in the string pool
+            readConstantPools.add(type.getId());
         }
+        for (ValueDescriptor v : type.getFields()) {
+            Type fieldType = types.get(v.getTypeId());
+            if (fieldType == null) {
+                continue;
+            }
+            if (PrivateAccess.getInstance().isConstantPool(v)) {
+                readConstantPools.add(fieldType.getId());
+            }
+            addReferencedConstantPools(fieldType, visited);
+        }
+    }
+
+    private static boolean isSymbolType(Type type) {
+        String name = type.getName();
+        return name.equals(ObjectFactory.TYPE_PREFIX_VERSION_1 + "Symbol") || name.equals(ObjectFactory.TYPE_PREFIX_VERSION_2 + "Symbol");
+    }
+
+    public boolean isReadConstantPool(long typeId) {
+        return readConstantPools == null || readConstantPools.contains(typeId);
     }
 
     public LongMap<Parser> getParsers() {
         return parsers;
     }
 
-    public LongMap<ConstantMap> getConstantPools() {
-        return constantPools;
+    public MetadataDescriptor getMetadata() {
+        return metadata;
+    }
+
+    public List<Type> getConstantPoolTypes() {
+        return constantPoolTypes;
+    }
+
+    /**
+     * Creates empty constant pools for a chunk, in the order of
+     * {@link #getConstantPoolTypes()}.
+     */
+    public ConstantMap[] newConstantPools(TimeConverter timeConverter) {
+        ConstantMap[] pools = new ConstantMap[constantPoolTypes.size()];
+        for (int i = 0; i < pools.length; i++) {
+            Type type = constantPoolTypes.get(i);
+            pools[i] = new ConstantMap(createObjectFactory(type, timeConverter), type.getName());
+        }
+        return pools;
+    }
+
+    /**
+     * Creates the factory of the typed objects of a constant pool, or returns
+     * {@code null} if its entries are plain {@code Object[]}.
+     */
+    public ObjectFactory<?> createObjectFactory(Type type, TimeConverter timeConverter) {
+        return ObjectFactory.create(type, fieldIndexes.get(type.getId()), timeConverter);
+    }
+
+    private int constantPoolIndex(Type type) {
+        Integer index = constantPoolIndexes.get(type.getId());
+        if (index == null) {
+            index = constantPoolTypes.size();
+            constantPoolTypes.add(type);
+            constantPoolIndexes.put(type.getId(), index);
+        }
+        return index;
     }
 
     public LongMap<Type> getTypeMap() {
@@ -84,7 +192,25 @@ final class ParserFactory {
         for (ValueDescriptor f : eventType.getFields()) {
             parsers.add(createParser(f));
         }
-        return new EventParser(timeConverter, eventType, parsers.toArray(new Parser[0]));
+        Set<String> projection = configuration.getFieldProjection(eventType.getName());
+        if (projection == null) {
+            return new EventParser(eventType, parsers.toArray(new Parser[0]), FieldIndex.ofEvent(eventType.getFields(), fieldIndexes));
+        }
+        // fields left out of the projection are skipped, the others keep
+        // their order so startTime and duration stay first
+        List<ValueDescriptor> projected = new ArrayList<>();
+        int[] slots = new int[parsers.size()];
+        int index = 0;
+        for (ValueDescriptor f : eventType.getFields()) {
+            String name = f.getName();
+            if (projection.contains(name) || name.equals(FIELD_START_TIME) || name.equals(EventInstrumentation.FIELD_DURATION)) {
+                slots[index++] = projected.size();
+                projected.add(f);
+            } else {
+                slots[index++] = -1;
+            }
+        }
+        return new EventParser(eventType, parsers.toArray(new Parser[0]), slots, FieldIndex.ofEvent(Collections.unmodifiableList(projected), fieldIndexes));
     }
 
     private Parser createParser(ValueDescriptor v) throws IOException {
@@ -100,12 +226,7 @@ final class ParserFactory {
             throw new IOException("Type '" + v.getTypeName() + "' is not defined");
         }
         if (constantPool) {
-            ConstantMap pool = constantPools.get(id);
-            if (pool == null) {
-                pool = new ConstantMap(ObjectFactory.create(type, timeConverter), type.getName());
-                constantPools.put(id, pool);
-            }
-            return new ConstantMapValueParser(pool);
+            return new ConstantMapValueParser(constantPoolIndex(type));
         }
         Parser parser = parsers.get(id);
         if (parser == null) {
@@ -137,9 +258,7 @@ final class ParserFactory {
         case "byte":
             return new ByteParser();
         case "java.lang.String":
-            ConstantMap pool = new ConstantMap(ObjectFactory.create(type, timeConverter), type.getName());
-            constantPools.put(type.getId(), pool);
-            return new StringParser(pool);
+            return new StringParser(constantPoolIndex(type));
         default:
             throw new IOException("Unknown primitive type " + type.getName());
         }
@@ -171,88 +290,225 @@ final class ParserFactory {
 
     private static final class BooleanParser extends Parser {
         @Override
-        public Object parse(RecordingInput input) throws IOException {
+        public Object parse(ChunkInput input) throws IOException {
             return input.readBoolean() ? Boolean.TRUE : Boolean.FALSE;
         }
+
+        @Override
+        public void skip(ChunkInput input) throws IOException {
+            input.readByte();
+        }
+
+        @Override
+        public long parsePrimitive(ChunkInput input) throws IOException {
+            return input.readBoolean() ? 1 : 0;
+        }
     }
 
     private static final class ByteParser extends Parser {
         @Override
-        public Object parse(RecordingInput input) throws IOException {
+        public Object parse(ChunkInput input) throws IOException {
             return Byte.valueOf(input.readByte());
         }
+
+        @Override
+        public void skip(ChunkInput input) throws IOException {
+            input.readByte();
+        }
+
+        @Override
+        public long parsePrimitive(ChunkInput input) throws IOException {
+            return input.readByte();
+        }
     }
 
     private static final class LongParser extends Parser {
         @Override
-        public Object parse(RecordingInput input) throws IOException {
+        public Object parse(ChunkInput input) throws IOException {
             return Long.valueOf(input.readLong());
         }
+
+        @Override
+        public void skip(ChunkInput input) throws IOException {
+            input.readLong();
+        }
+
+        @Override
+        public long parsePrimitive(ChunkInput input) throws IOException {
+            return input.readLong();
+        }
     }
 
     private static final class IntegerParser extends Parser {
         @Override
-        public Object parse(RecordingInput input) throws IOException {
+        public Object parse(ChunkInput input) throws IOException {
             return Integer.valueOf(input.readInt());
         }
+
+        @Override
+        public void skip(ChunkInput input) throws IOException {
+            input.readLong();
+        }
+
+        @Override
+        public long parsePrimitive(ChunkInput input) throws IOException {
+            return input.readInt();
+        }
     }
 
     private static final class ShortParser extends Parser {
         @Override
-        public Object parse(RecordingInput input) throws IOException {
+        public Object parse(ChunkInput input) throws IOException {
             return Short.valueOf(input.readShort());
         }
+
+        @Override
+        public void skip(ChunkInput input) throws IOException {
+            input.readLong();
+        }
+
+        @Override
+        public long parsePrimitive(ChunkInput input) throws IOException {
+            return input.readShort();
+        }
     }
 
     private static final class CharacterParser extends Parser {
         @Override
-        public Object parse(RecordingInput input) throws IOException {
+        public Object parse(ChunkInput input) throws IOException {
             return Character.valueOf(input.readChar());
         }
+
+        @Override
+        public void skip(ChunkInput input) throws IOException {
+            input.readLong();
+        }
+
+        @Override
+        public long parsePrimitive(ChunkInput input) throws IOException {
+            return input.readChar();
+        }
     }
 
     private static final class FloatParser extends Parser {
         @Override
-        public Object parse(RecordingInput input) throws IOException {
+        public Object parse(ChunkInput input) throws IOException {
             return Float.valueOf(input.readFloat());
         }
+
+        @Override
+        public void skip(ChunkInput input) throws IOException {
+            input.skipBytes(Float.BYTES);
+        }
+
+        @Override
+        public long parsePrimitive(ChunkInput input) throws IOException {
+            return input.readRawInt();
+        }
     }
 
     private static final class DoubleParser extends Parser {
         @Override
-        public Object parse(RecordingInput input) throws IOException {
+        public Object parse(ChunkInput input) throws IOException {
             return Double.valueOf(input.readDouble());
         }
+
+        @Override
+        public void skip(ChunkInput input) throws IOException {
+            input.skipBytes(Double.BYTES);
+        }
+
+        @Override
+        public long parsePrimitive(ChunkInput input) throws IOException {
+            return input.readRawLong();
+        }
     }
 
     private static final class StringParser extends Parser {
-        private final ConstantMap stringConstantMap;
-        private String last;
+        private final int stringConstantMap;
 
-        StringParser(ConstantMap stringConstantMap) {
+        StringParser(int stringConstantMap) {
             this.stringConstantMap = stringConstantMap;
         }
 
         @Override
-        public Object parse(RecordingInput input) throws IOException {
-            String s = parseEncodedString(input);
-            if (!Objects.equals(s, last)) {
-                last = s;
-            }
-            return last;
+        public Object parse(ChunkInput input) throws IOException {
+            return parseEncodedString(input, input.readByte());
         }
 
-        private String parseEncodedString(RecordingInput input) throws IOException {
+        @Override
+        public void skip(ChunkInput input) throws IOException {
+            input.skipEncodedString(input.readByte());
+        }
+
+        @Override
+        public void hash(ChunkInput input, ContentHasher hasher) throws IOException {
             byte encoding = input.readByte();
-            if (encoding == RecordingInput.STRING_ENCODING_CONSTANT_POOL) {
+            if (encoding == ChunkInput.STRING_ENCODING_CONSTANT_POOL) {
+                hasher.reference(stringConstantMap, input.readLong());
+            } else {
+                hasher.update(encoding);
+                long from = input.position();
+                input.skipEncodedString(encoding);
+                hasher.update(input, from);
+            }
+        }
+
+        // a String, or a pending reference to the string pool like those of
+        // ConstantMapValueParser
+        private Object parseEncodedString(ChunkInput input, byte encoding) throws IOException {
+            if (encoding == ChunkInput.STRING_ENCODING_CONSTANT_POOL) {
                 long id = input.readLong();
-                return (String) stringConstantMap.get(id);
+                ConstantResolver resolver = input.getResolver();
+                if (resolver != null) {
+                    // pools are being filled, the entry may not be read yet
+                    return resolver.reference(stringConstantMap, id);
+                }
+                return input.getConstantPool(stringConstantMap).get(id);
             } else {
                 return input.readEncodedString(encoding);
             }
         }
     }
 
+    // keeps UTF-8 and Latin-1 byte arrays in the symbol table, without
+    // creating a String
+    private static final class SymbolParser extends Parser {
+        private final StringParser stringParser;
+        private final SymbolTable symbols;
+
+        SymbolParser(StringParser stringParser, SymbolTable symbols) {
+            this.stringParser = stringParser;
+            this.symbols = symbols;
+        }
+
+        @Override
+        public Object parse(ChunkInput input) throws IOException {
+            byte encoding = input.readByte();
+            if (encoding == ChunkInput.STRING_ENCODING_UTF8_BYTE_ARRAY || encoding == ChunkInput.STRING_ENCODING_LATIN1_BYTE_ARRAY) {
+                int size = input.readInt();
+                input.require(size, "String size %d exceeds available data");
+                return symbols.add(input, encoding, size);
+            }
+            Object text = stringParser.parseEncodedString(input, encoding);
+            if (text == ConstantResolver.PENDING) {
+                // resolved to the String of the pool, not kept as a symbol
+                return text;
+            }
+            return text == null ? null : symbols.add((String) text);
+        }
+
+        @Override
+        public void skip(ChunkInput input) throws IOException {
+            stringParser.skip(input);
+        }
+
+        @Override
+        public void hash(ChunkInput input, ContentHasher hasher) throws IOException {
+            stringParser.hash(input, hasher);
+        }
+    }
+
     private final static class ArrayParser extends Parser {
         private final Parser elementParser;
 
@@ -261,14 +517,35 @@ final class ParserFactory {
         }
 
         @Override
-        public Object parse(RecordingInput input) throws IOException {
+        public Object parse(ChunkInput input) throws IOException {
             final int size = input.readInt();
             final Object[] array = new Object[size];
             for (int i = 0; i < size; i++) {
-                array[i] = elementParser.parse(input);
+                Object value = elementParser.parse(input);
+                if (value == ConstantResolver.PENDING) {
+                    input.getResolver().slot(array, i);
+                }
+                array[i] = value;
             }
             return array;
         }
+
+        @Override
+        public void skip(ChunkInput input) throws IOException {
+            final int size = input.readInt();
+            for (int i = 0; i < size; i++) {
+                elementParser.skip(input);
+            }
+        }
+
+        @Override
+        public void hash(ChunkInput input, ContentHasher hasher) throws IOException {
+            final int size = input.readInt();
+            hasher.update(size);
+            for (int i = 0; i < size; i++) {
+                elementParser.hash(input, hasher);
+            }
+        }
     }
 
     private final static class CompositeParser extends Parser {
@@ -279,25 +556,59 @@ final class ParserFactory {
         }
 
         @Override
-        public Object parse(RecordingInput input) throws IOException {
+        public Object parse(ChunkInput input) throws IOException {
             final Object[] values = new Object[parsers.length];
             for (int i = 0; i < values.length; i++) {
-                values[i] = parsers[i].parse(input);
+                Object value = parsers[i].parse(input);
+                if (value == ConstantResolver.PENDING) {
+                    input.getResolver().slot(values, i);
+                }
+                values[i] = value;
             }
             return values;
         }
+
+        @Override
+        public void skip(ChunkInput input) throws IOException {
+            for (int i = 0; i < parsers.length; i++) {
+                parsers[i].skip(input);
+            }
+        }
+
+        @Override
+        public void hash(ChunkInput input, ContentHasher hasher) throws IOException {
+            for (int i = 0; i < parsers.length; i++) {
+                parsers[i].hash(input, hasher);
+            }
+        }
     }
 
     private static final class ConstantMapValueParser extends Parser {
-        private final ConstantMap pool;
+        private final int pool;
 
-        ConstantMapValueParser(ConstantMap pool) {
+        ConstantMapValueParser(int pool) {
             this.pool = pool;
         }
 
         @Override
-        public Object parse(RecordingInput input) throws IOException {
-            return pool.get(input.readLong());
+        public Object parse(ChunkInput input) throws IOException {
+            long id = input.readLong();
+            ConstantResolver resolver = input.getResolver();
+            if (resolver != null) {
+                // pools are being filled, the entry may not be read yet
+                return resolver.reference(pool, id);
+            }
+            return input.getConstantPool(pool).get(id);
+        }
+
+        @Override
+        public void hash(ChunkInput input, ContentHasher hasher) throws IOException {
+            hasher.reference(pool, input.readLong());
+        }
+
+        @Override
+        public void skip(ChunkInput input) throws IOException {
+            input.readLong();
         }
     }
 }
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2016, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.bempel.jfr.jdk;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Wall time, bytes read and bytes allocated by each phase of parsing a
+ * recording, and by the constant pools of each type.
+ * <p>
+ * A profile is passed to {@link ParserConfiguration#setProfile(ParserProfile)}
+ * and is filled while the recording is read, chunks parsed concurrently
+ * included. Allocated bytes are measured per thread with
+ * {@link com.sun.management.ThreadMXBean}, they are 0 if the JVM does not
+ * support it. Every call to {@link RecordingFile#readEvent()} is measured,
+ * which adds a fixed cost per event to the parsing being profiled.
+ * <p>
+ * A profile can also be passed to {@link PrettyWriter#setProfile(ParserProfile)}
+ * to measure the events it prints.
+ */
+public final class ParserProfile {
+
+    /**
+     * Phases of parsing a recording.
+     */
+    public enum Phase {
+        /** reading and fingerprinting the metadata event of chunks */
+        METADATA,
+        /** building parsers for metadata not seen before */
+        PARSERS,
+        /** reading the checkpoints of chunks into constant pools */
+        CONSTANT_POOLS,
+        /** resolving references between constant pool entries */
+        RESOLUTION,
+        /** decoding events */
+        EVENTS,
+        /** waiting for chunks parsed concurrently */
+        WAIT,
+        /** formatting events and writing them, by an event writer */
+        WRITE,
+        /** formatting and writing results, measured by the caller */
+        OUTPUT
+    }
+
+    // count, wall time, bytes and allocated bytes
+    private static final int COUNT = 0;
+    private static final int WALL_NANOS = 1;
+    private static final int BYTES = 2;
+    private static final int ALLOCATED_BYTES = 3;
+
+    private final com.sun.management.ThreadMXBean threads;
+    private final long[][] phases = new long[Phase.values().length][4];
+    private final Map<String, long[]> constantPools = new TreeMap<>();
+
+    public ParserProfile() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean threads = null;
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            threads = (com.sun.management.ThreadMXBean) bean;
+            if (threads.isThreadAllocatedMemorySupported()) {
+                threads.setThreadAllocatedMemoryEnabled(true);
+            } else {
+                threads = null;
+            }
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Returns the bytes allocated so far by the current thread, to pass to
+     * {@link #record(Phase, long, long, long)} with {@link System#nanoTime()}
+     * at the start of a phase.
+     */
+    public long allocatedBytes() {
+        return threads != null ? threads.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+    }
+
+    /**
+     * Records a phase that started at the given time and allocated bytes of
+     * the current thread.
+     *
+     * @param phase the phase
+     * @param startNanos {@link System#nanoTime()} at the start of the phase
+     * @param startAllocatedBytes {@link #allocatedBytes()} at the start of
+     *        the phase
+     * @param bytes bytes of the recording read by the phase
+     */
+    public void record(Phase phase, long startNanos, long startAllocatedBytes, long bytes) {
+        record(phase, 1, startNanos, startAllocatedBytes, bytes);
+    }
+
+    // a phase run count times, such as the events decoded by a call
+    void record(Phase phase, long count, long startNanos, long startAllocatedBytes, long bytes) {
+        long wallNanos = System.nanoTime() - startNanos;
+        long allocated = allocatedBytes() - startAllocatedBytes;
+        synchronized (this) {
+            add(phases[phase.ordinal()], count, wallNanos, bytes, allocated);
+        }
+    }
+
+    // entries of a pool read from a checkpoint
+    void recordConstantPool(String name, long entries, long startNanos, long startAllocatedBytes, long bytes) {
+        long wallNanos = System.nanoTime() - startNanos;
+        long allocated = allocatedBytes() - startAllocatedBytes;
+        synchronized (this) {
+            add(constantPools.computeIfAbsent(name, k -> new long[4]), entries, wallNanos, bytes, allocated);
+        }
+    }
+
+    private static void add(long[] stats, long count, long wallNanos, long bytes, long allocated) {
+        stats[COUNT] += count;
+        stats[WALL_NANOS] += wallNanos;
+        stats[BYTES] += bytes;
+        stats[ALLOCATED_BYTES] += allocated;
+    }
+
+    public synchronized long getWallNanos(Phase phase) {
+        return phases[phase.ordinal()][WALL_NANOS];
+    }
+
+    public synchronized long getBytes(Phase phase) {
+        return phases[phase.ordinal()][BYTES];
+    }
+
+    public synchronized long getAllocatedBytes(Phase phase) {
+        return phases[phase.ordinal()][ALLOCATED_BYTES];
+    }
+
+    /**
+     * Returns the profile as a JSON object, with a {@code phases} object by
+     * phase name and a {@code constantPools} object by pool type name. The
+     * count of a constant pool is its number of entries.
+     */
+    public synchronized String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n  \"phases\": {");
+        Phase[] values = Phase.values();
+        for (int i = 0; i < values.length; i++) {
+            appendStats(sb, values[i].name().toLowerCase(), phases[i], i == 0);
+        }
+        sb.append("\n  },\n  \"constantPools\": {");
+        boolean first = true;
+        for (Map.Entry<String, long[]> entry : constantPools.entrySet()) {
+            appendStats(sb, entry.getKey(), entry.getValue(), first);
+            first = false;
+        }
+        sb.append("\n  }\n}");
+        return sb.toString();
+    }
+
+    private static void appendStats(StringBuilder sb, String name, long[] stats, boolean first) {
+        sb.append(first ? "\n" : ",\n");
+        sb.append("    \"");
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+        sb.append("\": {\"count\": ").append(stats[COUNT]);
+        sb.append(", \"wallNanos\": ").append(stats[WALL_NANOS]);
+        sb.append(", \"bytes\": ").append(stats[BYTES]);
+        sb.append(", \"allocatedBytes\": ").append(stats[ALLOCATED_BYTES]).append('}');
+    }
+
+    @Override
+    public String toString() {
+        return toJson();
+    }
+}
@@ -192,6 +192,18 @@ public final class PrettyWriter extends EventPrintWriter {
     }
 
     public void print(RecordedEvent event) {
+        ParserProfile profile = getProfile();
+        if (profile == null) {
+            printEvent(event);
+            return;
+        }
+        long startNanos = System.nanoTime();
+        long startAllocated = profile.allocatedBytes();
+        printEvent(event);
+        profile.record(ParserProfile.Phase.WRITE, 1, startNanos, startAllocated, 0);
+    }
+
+    private void printEvent(RecordedEvent event) {
         currentEvent = event;
         print(event.getEventType().getName(), " ");
         println("{");
@@ -25,11 +25,7 @@
 
 package com.bempel.jfr.jdk;
 
-import jdk.jfr.ValueDescriptor;
-import jdk.jfr.internal.Type;
-
 import java.lang.reflect.Modifier;
-import java.util.List;
 
 /**
  * A recorded Java type, such as a class or an interface.
@@ -38,11 +34,17 @@ import java.util.List;
  */
 public final class RecordedClass extends RecordedObject {
 
-    static ObjectFactory<RecordedClass> createFactory(Type type, TimeConverter timeConverter) {
-        return new ObjectFactory<RecordedClass>(type) {
+    // fields read by the typed getters, see ObjectFactory.typedFields
+    static final String[] TYPED_FIELDS = { "modifiers", "classLoader", "name" };
+    private static final int MODIFIERS = 0;
+    private static final int CLASS_LOADER = 1;
+    private static final int NAME = 2;
+
+    static ObjectFactory<RecordedClass> createFactory(FieldIndex fieldIndex, TimeConverter timeConverter) {
+        return new ObjectFactory<RecordedClass>(fieldIndex) {
             @Override
-            RecordedClass createTyped(List<ValueDescriptor> desc, long id, Object[] object) {
-                return new RecordedClass(desc, id, object, timeConverter);
+            RecordedClass createTyped(FieldIndex fieldIndex, long id, Object[] object) {
+                return new RecordedClass(fieldIndex, id, object, timeConverter);
             }
         };
     }
@@ -50,8 +52,8 @@ public final class RecordedClass extends RecordedObject {
     private final long uniqueId;
 
     // package private
-    private RecordedClass(List<ValueDescriptor> descriptors, long id, Object[] values, TimeConverter timeConverter) {
-        super(descriptors, values, timeConverter);
+    private RecordedClass(FieldIndex fieldIndex, long id, Object[] values, TimeConverter timeConverter) {
+        super(fieldIndex, values, timeConverter);
         this.uniqueId = id;
     }
 
@@ -65,7 +67,7 @@ public final class RecordedClass extends RecordedObject {
      * @see Modifier
      */
     public int getModifiers() {
-        return getTyped("modifiers", Integer.class, -1);
+        return getTyped(MODIFIERS, Integer.class, -1);
     }
 
     /**
@@ -77,7 +79,7 @@ public final class RecordedClass extends RecordedObject {
      * @return the class loader defining this class, can be {@code null}
      */
     public RecordedClassLoader getClassLoader() {
-        return getTyped("classLoader", RecordedClassLoader.class, null);
+        return getTyped(CLASS_LOADER, RecordedClassLoader.class, null);
     }
 
     /**
@@ -87,7 +89,7 @@ public final class RecordedClass extends RecordedObject {
      * @return the class name, not {@code null}
      */
     public String getName() {
-        return getTyped("name", String.class, null).replace("/", ".");
+        return getTyped(NAME, String.class, null).replace("/", ".");
     }
 
     /**
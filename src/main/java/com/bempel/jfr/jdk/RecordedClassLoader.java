@@ -25,11 +25,6 @@
 
 package com.bempel.jfr.jdk;
 
-import jdk.jfr.ValueDescriptor;
-import jdk.jfr.internal.Type;
-
-import java.util.List;
-
 /**
  * A recorded Java class loader.
  *
@@ -37,11 +32,16 @@ import java.util.List;
  */
 public final class RecordedClassLoader extends RecordedObject {
 
-    static ObjectFactory<RecordedClassLoader> createFactory(Type type, TimeConverter timeConverter) {
-        return new ObjectFactory<RecordedClassLoader>(type) {
+    // fields read by the typed getters, see ObjectFactory.typedFields
+    static final String[] TYPED_FIELDS = { "type", "name" };
+    private static final int TYPE = 0;
+    private static final int NAME = 1;
+
+    static ObjectFactory<RecordedClassLoader> createFactory(FieldIndex fieldIndex, TimeConverter timeConverter) {
+        return new ObjectFactory<RecordedClassLoader>(fieldIndex) {
             @Override
-            RecordedClassLoader createTyped(List<ValueDescriptor> desc, long id, Object[] object) {
-                return new RecordedClassLoader(desc, id, object, timeConverter);
+            RecordedClassLoader createTyped(FieldIndex fieldIndex, long id, Object[] object) {
+                return new RecordedClassLoader(fieldIndex, id, object, timeConverter);
             }
         };
     }
@@ -49,8 +49,8 @@ public final class RecordedClassLoader extends RecordedObject {
     private final long uniqueId;
 
     // package private
-    private RecordedClassLoader(List<ValueDescriptor> descriptors, long id, Object[] values, TimeConverter timeConverter) {
-        super(descriptors, values, timeConverter);
+    private RecordedClassLoader(FieldIndex fieldIndex, long id, Object[] values, TimeConverter timeConverter) {
+        super(fieldIndex, values, timeConverter);
         this.uniqueId = id;
     }
 
@@ -64,7 +64,7 @@ public final class RecordedClassLoader extends RecordedObject {
      * @return class of the class loader, can be {@code null}
      */
     public RecordedClass getType() {
-        return getTyped("type", RecordedClass.class, null);
+        return getTyped(TYPE, RecordedClass.class, null);
     }
 
     /**
@@ -74,7 +74,7 @@ public final class RecordedClassLoader extends RecordedObject {
      * @return the class loader name, can be {@code null}
      */
     public String getName() {
-        return getTyped("name", String.class, null);
+        return getTyped(NAME, String.class, null);
     }
 
     /**
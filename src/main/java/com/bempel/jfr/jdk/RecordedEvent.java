@@ -39,19 +39,38 @@ import java.util.List;
  * @since 8
  */
 public final class RecordedEvent extends RecordedObject {
+    // fields read by the typed getters, see ObjectFactory.typedFields
+    static final String[] TYPED_FIELDS = { EventInstrumentation.FIELD_STACK_TRACE, EventInstrumentation.FIELD_EVENT_THREAD };
+    private static final int STACK_TRACE = 0;
+    private static final int EVENT_THREAD = 1;
+
     private final EventType eventType;
-    private final long startTime;
+    // not final, the event of a cursor is reused, see RecordingCursor
+    private long startTime;
     // package private needed for efficient sorting
-    final long endTime;
+    long endTime;
 
     // package private
-    RecordedEvent(EventType type, List<ValueDescriptor> vds, Object[] values, long startTime, long endTime, TimeConverter timeConverter) {
-        super(vds, values, timeConverter);
+    RecordedEvent(EventType type, FieldIndex fieldIndex, Object[] values, long[] primitives, ValueLayout layout, long startTime, long endTime, TimeConverter timeConverter) {
+        super(fieldIndex, values, primitives, layout, timeConverter);
         this.eventType = type;
         this.startTime = startTime;
         this.endTime = endTime;
     }
 
+    // package private, sets the times of a reused event
+    void setTimes(long startTime, long endTime) {
+        this.startTime = startTime;
+        this.endTime = endTime;
+    }
+
+    // package private, a copy that is not changed when the event is reused
+    RecordedEvent copy() {
+        Object[] objects = getObjects();
+        long[] primitives = getPrimitives();
+        return new RecordedEvent(eventType, getFieldIndex(), objects.clone(), primitives != null ? primitives.clone() : null, getLayout(), startTime, endTime, getTimeConverter());
+    }
+
     /**
      * Returns the stack trace that was created when the event was committed, or
      * {@code null} if the event lacks a stack trace.
@@ -59,7 +78,7 @@ public final class RecordedEvent extends RecordedObject {
      * @return stack trace, or {@code null} if doesn't exist for the event
      */
     public RecordedStackTrace getStackTrace() {
-        return getTyped(EventInstrumentation.FIELD_STACK_TRACE, RecordedStackTrace.class, null);
+        return getTyped(STACK_TRACE, RecordedStackTrace.class, null);
     }
 
     /**
@@ -69,7 +88,7 @@ public final class RecordedEvent extends RecordedObject {
      * @return thread, or {@code null} if doesn't exist for the event
      */
     public RecordedThread getThread() {
-        return getTyped(EventInstrumentation.FIELD_EVENT_THREAD, RecordedThread.class, null);
+        return getTyped(EVENT_THREAD, RecordedThread.class, null);
     }
 
     /**
@@ -114,11 +133,16 @@ public final class RecordedEvent extends RecordedObject {
 
     /**
      * Returns the list of descriptors that describes the fields of the event.
+     * <p>
+     * If a field projection was configured for the event type, only the
+     * projected fields are described.
      *
      * @return descriptors, not {@code null}
+     *
+     * @see ParserConfiguration#setFieldProjection(String, java.util.Collection)
      */
     @Override
     public List<ValueDescriptor> getFields() {
-        return getEventType().getFields();
+        return super.getFields();
     }
 }
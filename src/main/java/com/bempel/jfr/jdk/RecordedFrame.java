@@ -25,11 +25,7 @@
 
 package com.bempel.jfr.jdk;
 
-import jdk.jfr.ValueDescriptor;
-import jdk.jfr.internal.Type;
-
 import java.lang.reflect.Modifier;
-import java.util.List;
 
 /**
  * A recorded frame in a stack trace.
@@ -38,18 +34,26 @@ import java.util.List;
  */
 public final class RecordedFrame extends RecordedObject {
 
-    static ObjectFactory<RecordedFrame> createFactory(Type type, TimeConverter timeConverter) {
-        return new ObjectFactory<RecordedFrame>(type) {
+    // fields read by the typed getters, see ObjectFactory.typedFields
+    static final String[] TYPED_FIELDS = { "javaFrame", "bytecodeIndex", "lineNumber", "type", "method" };
+    private static final int JAVA_FRAME = 0;
+    private static final int BYTECODE_INDEX = 1;
+    private static final int LINE_NUMBER = 2;
+    private static final int TYPE = 3;
+    private static final int METHOD = 4;
+
+    static ObjectFactory<RecordedFrame> createFactory(FieldIndex fieldIndex, TimeConverter timeConverter) {
+        return new ObjectFactory<RecordedFrame>(fieldIndex) {
             @Override
-            RecordedFrame createTyped(List<ValueDescriptor> desc, long id, Object[] object) {
-                return new RecordedFrame(desc, object, timeConverter);
+            RecordedFrame createTyped(FieldIndex fieldIndex, long id, Object[] object) {
+                return new RecordedFrame(fieldIndex, object, timeConverter);
             }
         };
     }
 
     // package private
-    RecordedFrame(List<ValueDescriptor> desc, Object[] objects, TimeConverter timeConverter) {
-        super(desc, objects, timeConverter);
+    RecordedFrame(FieldIndex fieldIndex, Object[] objects, TimeConverter timeConverter) {
+        super(fieldIndex, objects, timeConverter);
     }
 
     /**
@@ -64,10 +68,7 @@ public final class RecordedFrame extends RecordedObject {
     public boolean isJavaFrame() {
         // Only Java frames exist today, but this allows
         // API to be extended for native frame in the future.
-        if (hasField("javaFrame")) {
-            return getTyped("javaFrame", Boolean.class, Boolean.TRUE);
-        }
-        return true;
+        return getTyped(JAVA_FRAME, Boolean.class, Boolean.TRUE);
     }
 
     /**
@@ -77,7 +78,7 @@ public final class RecordedFrame extends RecordedObject {
      * @return byte code index, or {@code -1} if doesn't exist
      */
     public int getBytecodeIndex() {
-        return getTyped("bytecodeIndex", Integer.class, Integer.valueOf(-1));
+        return getTyped(BYTECODE_INDEX, Integer.class, Integer.valueOf(-1));
     }
 
     /**
@@ -87,7 +88,7 @@ public final class RecordedFrame extends RecordedObject {
      * @return the line number, or {@code -1} if doesn't exist
      */
     public int getLineNumber() {
-        return getTyped("lineNumber", Integer.class, Integer.valueOf(-1));
+        return getTyped(LINE_NUMBER, Integer.class, Integer.valueOf(-1));
     }
 
     /**
@@ -98,7 +99,7 @@ public final class RecordedFrame extends RecordedObject {
      * @return the frame type, or {@code null} if doesn't exist
      */
     public String getType() {
-        return getTyped("type", String.class, null);
+        return getTyped(TYPE, String.class, null);
     }
 
     /**
@@ -108,6 +109,6 @@ public final class RecordedFrame extends RecordedObject {
      * @return the method, not {@code null}
      */
     public RecordedMethod getMethod() {
-        return getTyped("method", RecordedMethod.class, null);
+        return getTyped(METHOD, RecordedMethod.class, null);
     }
 }
@@ -25,11 +25,7 @@
 
 package com.bempel.jfr.jdk;
 
-import jdk.jfr.ValueDescriptor;
-import jdk.jfr.internal.Type;
-
 import java.lang.reflect.Modifier;
-import java.util.List;
 
 /**
  * A recorded method.
@@ -38,17 +34,25 @@ import java.util.List;
  */
 public final class RecordedMethod extends RecordedObject {
 
-    static ObjectFactory<RecordedMethod> createFactory(Type type, TimeConverter timeConverter) {
-        return new ObjectFactory<RecordedMethod>(type) {
+    // fields read by the typed getters, see ObjectFactory.typedFields
+    static final String[] TYPED_FIELDS = { "type", "name", "descriptor", "modifiers", "hidden" };
+    private static final int TYPE = 0;
+    private static final int NAME = 1;
+    private static final int DESCRIPTOR = 2;
+    private static final int MODIFIERS = 3;
+    private static final int HIDDEN = 4;
+
+    static ObjectFactory<RecordedMethod> createFactory(FieldIndex fieldIndex, TimeConverter timeConverter) {
+        return new ObjectFactory<RecordedMethod>(fieldIndex) {
             @Override
-            RecordedMethod createTyped(List<ValueDescriptor> desc, long id, Object[] object) {
-                return new RecordedMethod(desc, object, timeConverter);
+            RecordedMethod createTyped(FieldIndex fieldIndex, long id, Object[] object) {
+                return new RecordedMethod(fieldIndex, object, timeConverter);
             }
         };
     }
 
-    private RecordedMethod(List<ValueDescriptor> descriptors, Object[] objects, TimeConverter timeConverter) {
-        super(descriptors, objects, timeConverter);
+    private RecordedMethod(FieldIndex fieldIndex, Object[] objects, TimeConverter timeConverter) {
+        super(fieldIndex, objects, timeConverter);
     }
 
     /**
@@ -62,7 +66,7 @@ public final class RecordedMethod extends RecordedObject {
      * @see RecordedFrame#isJavaFrame()
      */
     public RecordedClass getType() {
-        return getTyped("type", RecordedClass.class, null);
+        return getTyped(TYPE, RecordedClass.class, null);
     }
 
     /**
@@ -75,7 +79,7 @@ public final class RecordedMethod extends RecordedObject {
      * @see RecordedFrame#isJavaFrame()
      */
     public String getName() {
-        return getTyped("name", String.class, null);
+        return getTyped(NAME, String.class, null);
     }
 
     /**
@@ -91,7 +95,7 @@ public final class RecordedMethod extends RecordedObject {
      * @see RecordedFrame#isJavaFrame()
      */
     public String getDescriptor() {
-        return getTyped("descriptor", String.class, null);
+        return getTyped(DESCRIPTOR, String.class, null);
     }
 
     /**
@@ -105,7 +109,7 @@ public final class RecordedMethod extends RecordedObject {
      * @see RecordedFrame#isJavaFrame
      */
     public int getModifiers() {
-        return getTyped("modifiers", Integer.class, Integer.valueOf(0));
+        return getTyped(MODIFIERS, Integer.class, Integer.valueOf(0));
     }
 
     /**
@@ -115,6 +119,6 @@ public final class RecordedMethod extends RecordedObject {
      * @return {@code true} if method is hidden, {@code false} otherwise
      */
     public boolean isHidden() {
-        return getTyped("hidden", Boolean.class, Boolean.FALSE);
+        return getTyped(HIDDEN, Boolean.class, Boolean.FALSE);
     }
 }
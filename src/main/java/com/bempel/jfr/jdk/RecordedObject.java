@@ -31,6 +31,8 @@ import jdk.jfr.ValueDescriptor;
 import jdk.jfr.internal.PrivateAccess;
 
 import java.io.PrintWriter;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.io.StringWriter;
 import java.time.Duration;
 import java.time.Instant;
@@ -62,25 +64,36 @@ public class RecordedObject {
         }
     }
 
+    private static final VarHandle OBJECTS = MethodHandles.arrayElementVarHandle(Object[].class);
+
     private final Object[] objects;
-    private final List<ValueDescriptor> descriptors;
+    // events only, unboxed primitive values and where each field is stored
+    private final long[] primitives;
+    private final ValueLayout layout;
+    private final FieldIndex fieldIndex;
     private final TimeConverter timeConverter;
 
     // package private, not to be subclassed outside this package
-    RecordedObject(List<ValueDescriptor> descriptors, Object[] objects, TimeConverter timeConverter) {
-        this.descriptors = descriptors;
+    RecordedObject(FieldIndex fieldIndex, Object[] objects, TimeConverter timeConverter) {
+        this(fieldIndex, objects, null, null, timeConverter);
+    }
+
+    RecordedObject(FieldIndex fieldIndex, Object[] objects, long[] primitives, ValueLayout layout, TimeConverter timeConverter) {
+        this.fieldIndex = fieldIndex;
         this.objects = objects;
+        this.primitives = primitives;
+        this.layout = layout;
         this.timeConverter = timeConverter;
     }
 
-    // package private
-    final <T> T getTyped(String name, Class<T> clazz, T defaultValue) {
-        // Unnecessary to check field presence twice, but this
-        // will do for now.
-        if (!hasField(name)) {
+    // package private, the value of a field of ObjectFactory.typedFields
+    final <T> T getTyped(int typedField, Class<T> clazz, T defaultValue) {
+        int index = fieldIndex.typedSlot(typedField);
+        if (index < 0) {
             return defaultValue;
         }
-        T object = getValue(name);
+        @SuppressWarnings("unchecked")
+        T object = (T) value(index, false);
         if (object == null || object.getClass().isAssignableFrom(clazz)) {
             return object;
         } else {
@@ -100,15 +113,17 @@ public class RecordedObject {
      */
     public boolean hasField(String name) {
         Objects.requireNonNull(name);
-        for (ValueDescriptor v : descriptors) {
-            if (v.getName().equals(name)) {
-                return true;
-            }
+        if (fieldIndex.indexOf(name) >= 0) {
+            return true;
         }
         int dotIndex = name.indexOf(".");
         if (dotIndex > 0) {
+            int[] path = fieldIndex.path(name);
+            if (path != null) {
+                return hasPath(path, name);
+            }
             String structName = name.substring(0, dotIndex);
-            for (ValueDescriptor v : descriptors) {
+            for (ValueDescriptor v : fieldIndex.getFields()) {
                 if (!v.getFields().isEmpty() && v.getName().equals(structName)) {
                     RecordedObject child = getValue(structName);
                     if (child != null) {
@@ -170,45 +185,19 @@ public class RecordedObject {
 
     private Object getValue(String name, boolean allowUnsigned) {
         Objects.requireNonNull(name);
-        int index = 0;
-        for (ValueDescriptor v : descriptors) {
-            if (name.equals(v.getName())) {
-                Object object = objects[index];
-                if (object == null) {
-                    // error or missing
-                    return null;
-                }
-                if (v.getFields().isEmpty()) {
-                    if (allowUnsigned && PrivateAccess.getInstance().isUnsigned(v)) {
-                        // Types that are meaningless to widen
-                        if (object instanceof Character || object instanceof Long) {
-                            return object;
-                        }
-                        return new UnsignedValue(object);
-                    }
-                    return object; // primitives and primitive arrays
-                } else {
-                    if (object instanceof RecordedObject) {
-                        // known types from factory
-                        return object;
-                    }
-                    // must be array type
-                    Object[] array = (Object[]) object;
-                    if (v.isArray()) {
-                        // struct array
-                        return structifyArray(v, array, 0);
-                    }
-                    // struct
-                    return new RecordedObject(v.getFields(), (Object[]) object, timeConverter);
-                }
-            }
-            index++;
+        int index = fieldIndex.indexOf(name);
+        if (index >= 0) {
+            return value(index, allowUnsigned);
+        }
+        int[] path = name.indexOf('.') > 0 ? fieldIndex.path(name) : null;
+        if (path != null) {
+            return pathValue(path, name, allowUnsigned);
         }
 
         int dotIndex = name.indexOf(".");
         if (dotIndex > 0) {
             String structName = name.substring(0, dotIndex);
-            for (ValueDescriptor v : descriptors) {
+            for (ValueDescriptor v : fieldIndex.getFields()) {
                 if (!v.getFields().isEmpty() && v.getName().equals(structName)) {
                     RecordedObject child = getValue(structName);
                     String subName = name.substring(dotIndex + 1);
@@ -226,8 +215,160 @@ public class RecordedObject {
         throw new IllegalArgumentException("Could not find field with name " + name);
     }
 
+    // value of a field, structs and struct arrays are wrapped
+    private Object value(int index, boolean allowUnsigned) {
+        ValueDescriptor v = fieldIndex.getFields().get(index);
+        Object object = field(index);
+        if (object == null) {
+            // error or missing
+            return null;
+        }
+        if (object instanceof Symbol) {
+            // compact symbols are decoded on access
+            return object.toString();
+        }
+        if (v.getFields().isEmpty()) {
+            if (allowUnsigned && PrivateAccess.getInstance().isUnsigned(v)) {
+                // Types that are meaningless to widen
+                if (object instanceof Character || object instanceof Long) {
+                    return object;
+                }
+                return new UnsignedValue(object);
+            }
+            return object; // primitives and primitive arrays
+        } else {
+            if (object instanceof RecordedObject) {
+                // known types from factory
+                return object;
+            }
+            if (v.isArray()) {
+                return structArray(v, index);
+            }
+            // struct
+            return new RecordedObject(fieldIndex.child(index), (Object[]) object, timeConverter);
+        }
+    }
+
+    // Returns the value at the end of a path of the field index
+    private Object pathValue(int[] path, String name, boolean allowUnsigned) {
+        RecordedObject object = this;
+        int dotIndex = -1;
+        for (int i = 0; i < path.length - 1; i++) {
+            int start = dotIndex + 1;
+            dotIndex = name.indexOf('.', start);
+            Object child = object.value(path[i], false);
+            if (child == null) {
+                String structName = name.substring(start, dotIndex);
+                String subName = name.substring(dotIndex + 1);
+                throw new NullPointerException("Field value for \"" + structName + "\" was null. Can't access nested field \"" + subName + "\"");
+            }
+            FieldIndex expected = object.fieldIndex.child(path[i]);
+            object = (RecordedObject) child;
+            if (object.fieldIndex != expected) {
+                // interned from a chunk with other metadata
+                return object.getValue(name.substring(dotIndex + 1), allowUnsigned);
+            }
+        }
+        return object.value(path[path.length - 1], allowUnsigned);
+    }
+
+    // Returns whether the objects on a path of the field index are not null
+    private boolean hasPath(int[] path, String name) {
+        RecordedObject object = this;
+        int dotIndex = -1;
+        for (int i = 0; i < path.length - 1; i++) {
+            dotIndex = name.indexOf('.', dotIndex + 1);
+            Object child = object.value(path[i], false);
+            if (child == null) {
+                return false;
+            }
+            FieldIndex expected = object.fieldIndex.child(path[i]);
+            object = (RecordedObject) child;
+            if (object.fieldIndex != expected) {
+                return object.hasField(name.substring(dotIndex + 1));
+            }
+        }
+        return true;
+    }
+
+    private Object field(int index) {
+        if (layout == null) {
+            return objects[index];
+        }
+        int entry = layout.entry(index);
+        if (ValueLayout.isPrimitive(entry)) {
+            return ValueLayout.box(entry, primitives[ValueLayout.index(entry)]);
+        }
+        return objects[ValueLayout.index(entry)];
+    }
+
+    // Returns the layout entry of a top level primitive field, or -1 if the
+    // value has to be looked up as an object
+    private int primitiveEntry(String name) {
+        if (layout == null) {
+            return -1;
+        }
+        int index = fieldIndex.indexOf(Objects.requireNonNull(name));
+        if (index < 0) {
+            return -1;
+        }
+        int entry = layout.entry(index);
+        return ValueLayout.isPrimitive(entry) ? entry : -1;
+    }
+
+    private long primitive(int entry) {
+        return primitives[ValueLayout.index(entry)];
+    }
+
+    // package private, used by field accessors
+    final FieldIndex getFieldIndex() {
+        return fieldIndex;
+    }
+
+    final ValueLayout getLayout() {
+        return layout;
+    }
+
+    final long getPrimitive(int entry) {
+        return primitive(entry);
+    }
+
+    // package private, the values of a reused event are decoded in place
+    final Object[] getObjects() {
+        return objects;
+    }
+
+    final long[] getPrimitives() {
+        return primitives;
+    }
+
+    final TimeConverter getTimeConverter() {
+        return timeConverter;
+    }
+
+    // Returns the value of a field resolved by a field accessor
+    final Object getValue(int[] path, String name) {
+        if (path.length == 1) {
+            return value(path[0], false);
+        }
+        return pathValue(path, name, false);
+    }
+
     // Returns the leaf value descriptor matches both name or value, or throws an
     // IllegalArgumentException
+    private ValueDescriptor getValueDescriptor(String name, String leafType) {
+        ValueDescriptor v = fieldIndex.descriptor(name);
+        if (v == null) {
+            // not in the field index, throws or goes through arrays or
+            // recursive types
+            return getValueDescriptor(fieldIndex.getFields(), name, leafType);
+        }
+        if (leafType != null && !v.getTypeName().equals(leafType)) {
+            throw new IllegalArgumentException("Attempt to get " + v.getTypeName() + " field \"" + v.getName() + "\" with illegal data type conversion " + leafType);
+        }
+        return v;
+    }
+
     private ValueDescriptor getValueDescriptor(List<ValueDescriptor> descriptors, String name, String leafType) {
         int dotIndex = name.indexOf(".");
         if (dotIndex > 0) {
@@ -260,11 +401,26 @@ public class RecordedObject {
     private <T> T getTypedValue(String name, String typeName) {
         Objects.requireNonNull(name);
         // Validate name and type first
-        getValueDescriptor(descriptors, name, typeName);
+        getValueDescriptor(name, typeName);
         return getValue(name);
     }
 
-    private Object[] structifyArray(ValueDescriptor v, Object[] array, int dimension) {
+    // Struct arrays are wrapped on first access and stored in place of the
+    // raw values, later reads and frames shared by interned stack traces
+    // return the same instances. Objects can be read by several threads,
+    // the wrapped array is published with release semantics.
+    private Object[] structArray(ValueDescriptor v, int index) {
+        int slot = layout == null ? index : ValueLayout.index(layout.entry(index));
+        Object[] array = (Object[]) OBJECTS.getAcquire(objects, slot);
+        if (array.length == 0 || array[0] instanceof RecordedObject) {
+            return array;
+        }
+        Object[] structArray = structifyArray(v, fieldIndex.child(index), array, 0);
+        OBJECTS.setRelease(objects, slot, structArray);
+        return structArray;
+    }
+
+    private Object[] structifyArray(ValueDescriptor v, FieldIndex elementIndex, Object[] array, int dimension) {
         if (array == null) {
             return null;
         }
@@ -275,12 +431,12 @@ public class RecordedObject {
                 // No general way to handle structarrays
                 // without invoking ObjectFactory for every instance (which may require id)
                 if (isStackFrameType(v.getTypeName())) {
-                    structArray[i] = new RecordedFrame(v.getFields(), (Object[]) arrayElement, timeConverter);
+                    structArray[i] = new RecordedFrame(elementIndex, (Object[]) arrayElement, timeConverter);
                 } else {
-                    structArray[i] = new RecordedObject(v.getFields(), (Object[]) arrayElement, timeConverter);
+                    structArray[i] = new RecordedObject(elementIndex, (Object[]) arrayElement, timeConverter);
                 }
             } else {
-                structArray[i] = structifyArray(v, (Object[]) arrayElement, dimension - 1);
+                structArray[i] = structifyArray(v, elementIndex, (Object[]) arrayElement, dimension - 1);
             }
         }
         return structArray;
@@ -302,7 +458,7 @@ public class RecordedObject {
      * @return the fields, not {@code null}
      */
     public List<ValueDescriptor> getFields() {
-        return descriptors;
+        return fieldIndex.getFields();
     }
 
     /**
@@ -325,6 +481,13 @@ public class RecordedObject {
      * @see #getValue(String)
      */
     public final boolean getBoolean(String name) {
+        int entry = primitiveEntry(name);
+        if (entry != -1) {
+            if (ValueLayout.kind(entry) == ValueLayout.BOOLEAN) {
+                return primitive(entry) != 0;
+            }
+            throw newIllegalArgumentException(name, "boolean");
+        }
         Object o = getValue(name);
         if (o instanceof Boolean) {
             return ((Boolean) o).booleanValue();
@@ -352,6 +515,13 @@ public class RecordedObject {
      * @see #getValue(String)
      */
     public final byte getByte(String name) {
+        int entry = primitiveEntry(name);
+        if (entry != -1) {
+            if (ValueLayout.kind(entry) == ValueLayout.BYTE) {
+                return (byte) primitive(entry);
+            }
+            throw newIllegalArgumentException(name, "byte");
+        }
         Object o = getValue(name);
         if (o instanceof Byte) {
             return ((Byte) o).byteValue();
@@ -379,6 +549,13 @@ public class RecordedObject {
      * @see #getValue(String)
      */
     public final char getChar(String name) {
+        int entry = primitiveEntry(name);
+        if (entry != -1) {
+            if (ValueLayout.kind(entry) == ValueLayout.CHAR) {
+                return (char) primitive(entry);
+            }
+            throw newIllegalArgumentException(name, "char");
+        }
         Object o = getValue(name);
         if (o instanceof Character) {
             return ((Character) o).charValue();
@@ -414,6 +591,15 @@ public class RecordedObject {
      * @set #getValue(String)
      */
     public final short getShort(String name) {
+        int entry = primitiveEntry(name);
+        if (entry != -1) {
+            switch (ValueLayout.kind(entry)) {
+            case ValueLayout.SHORT:
+            case ValueLayout.BYTE:
+                return (short) ValueLayout.widen(entry, primitive(entry), true);
+            }
+            throw newIllegalArgumentException(name, "short");
+        }
         Object o = getValue(name, true);
         if (o instanceof Short) {
             return ((Short) o).shortValue();
@@ -461,6 +647,17 @@ public class RecordedObject {
      * @set #getValue(String)
      */
     public final int getInt(String name) {
+        int entry = primitiveEntry(name);
+        if (entry != -1) {
+            switch (ValueLayout.kind(entry)) {
+            case ValueLayout.INT:
+            case ValueLayout.SHORT:
+            case ValueLayout.CHAR:
+            case ValueLayout.BYTE:
+                return (int) ValueLayout.widen(entry, primitive(entry), true);
+            }
+            throw newIllegalArgumentException(name, "int");
+        }
         Object o = getValue(name, true);
         if (o instanceof Integer) {
             return ((Integer) o).intValue();
@@ -514,6 +711,20 @@ public class RecordedObject {
      * @set #getValue(String)
      */
     public final float getFloat(String name) {
+        int entry = primitiveEntry(name);
+        if (entry != -1) {
+            switch (ValueLayout.kind(entry)) {
+            case ValueLayout.FLOAT:
+                return Float.intBitsToFloat((int) primitive(entry));
+            case ValueLayout.LONG:
+            case ValueLayout.INT:
+            case ValueLayout.SHORT:
+            case ValueLayout.BYTE:
+            case ValueLayout.CHAR:
+                return primitive(entry);
+            }
+            throw newIllegalArgumentException(name, "float");
+        }
         Object o = getValue(name);
         if (o instanceof Float) {
             return ((Float) o).floatValue();
@@ -564,6 +775,18 @@ public class RecordedObject {
      * @set #getValue(String)
      */
     public final long getLong(String name) {
+        int entry = primitiveEntry(name);
+        if (entry != -1) {
+            switch (ValueLayout.kind(entry)) {
+            case ValueLayout.LONG:
+            case ValueLayout.INT:
+            case ValueLayout.SHORT:
+            case ValueLayout.CHAR:
+            case ValueLayout.BYTE:
+                return ValueLayout.widen(entry, primitive(entry), true);
+            }
+            throw newIllegalArgumentException(name, "long");
+        }
         Object o = getValue(name, true);
         if (o instanceof Long) {
             return ((Long) o).longValue();
@@ -620,6 +843,22 @@ public class RecordedObject {
      * @set #getValue(String)
      */
     public final double getDouble(String name) {
+        int entry = primitiveEntry(name);
+        if (entry != -1) {
+            switch (ValueLayout.kind(entry)) {
+            case ValueLayout.DOUBLE:
+                return Double.longBitsToDouble(primitive(entry));
+            case ValueLayout.FLOAT:
+                return Float.intBitsToFloat((int) primitive(entry));
+            case ValueLayout.LONG:
+            case ValueLayout.INT:
+            case ValueLayout.SHORT:
+            case ValueLayout.BYTE:
+            case ValueLayout.CHAR:
+                return primitive(entry);
+            }
+            throw newIllegalArgumentException(name, "double");
+        }
         Object o = getValue(name);
         if (o instanceof Double) {
             return ((Double) o).doubleValue();
@@ -668,6 +907,42 @@ public class RecordedObject {
         return getTypedValue(name, "java.lang.String");
     }
 
+    /**
+     * Returns the value of a symbol field, such as the name of a
+     * {@link RecordedMethod}, without decoding it.
+     * <p>
+     * It's possible to index into a nested object using {@code "."} (for example,
+     * {@code "type.name"}).
+     *
+     * @param name of the field to get, not {@code null}
+     *
+     * @return the symbol, or {@code null} if the value is {@code null} or
+     *         symbols are not compact, see
+     *         {@link ParserConfiguration#setCompactSymbols(boolean)}
+     *
+     * @throws IllegalArgumentException if the field doesn't exist
+     *
+     * @see #hasField(String)
+     */
+    public final Symbol getSymbol(String name) {
+        int index = fieldIndex.indexOf(Objects.requireNonNull(name));
+        if (index >= 0) {
+            Object object = field(index);
+            return object instanceof Symbol ? (Symbol) object : null;
+        }
+        int dotIndex = name.indexOf(".");
+        if (dotIndex > 0) {
+            Object child = getValue(name.substring(0, dotIndex));
+            if (child instanceof RecordedObject) {
+                return ((RecordedObject) child).getSymbol(name.substring(dotIndex + 1));
+            }
+            if (child == null && hasField(name.substring(0, dotIndex))) {
+                return null;
+            }
+        }
+        throw new IllegalArgumentException("Could not find field with name " + name);
+    }
+
     /**
      * Returns the value of a timespan field.
      * <p>
@@ -692,6 +967,18 @@ public class RecordedObject {
      * @set #getValue(String)
      */
     public final Duration getDuration(String name) {
+        int entry = primitiveEntry(name);
+        if (entry != -1) {
+            switch (ValueLayout.kind(entry)) {
+            case ValueLayout.LONG:
+            case ValueLayout.INT:
+            case ValueLayout.SHORT:
+            case ValueLayout.CHAR:
+            case ValueLayout.BYTE:
+                return getDuration(primitive(entry), name);
+            }
+            throw newIllegalArgumentException(name, "java,time.Duration");
+        }
         Object o = getValue(name);
         if (o instanceof Long) {
             return getDuration(((Long) o).longValue(), name);
@@ -724,7 +1011,7 @@ public class RecordedObject {
     }
 
     private Duration getDuration(long timespan, String name) throws InternalError {
-        ValueDescriptor v = getValueDescriptor(descriptors, name, null);
+        ValueDescriptor v = getValueDescriptor(name, null);
         if (timespan == Long.MIN_VALUE) {
             return Duration.ofSeconds(Long.MIN_VALUE, 0);
         }
@@ -771,6 +1058,18 @@ public class RecordedObject {
      * @set #getValue(String)
      */
     public final Instant getInstant(String name) {
+        int entry = primitiveEntry(name);
+        if (entry != -1) {
+            switch (ValueLayout.kind(entry)) {
+            case ValueLayout.LONG:
+            case ValueLayout.INT:
+            case ValueLayout.SHORT:
+            case ValueLayout.CHAR:
+            case ValueLayout.BYTE:
+                return getInstant(ValueLayout.widen(entry, primitive(entry), true), name);
+            }
+            throw newIllegalArgumentException(name, "java.time.Instant");
+        }
         Object o = getValue(name, true);
         if (o instanceof Long) {
             return getInstant(((Long) o).longValue(), name);
@@ -803,7 +1102,7 @@ public class RecordedObject {
     }
 
     private Instant getInstant(long timestamp, String name) {
-        ValueDescriptor v = getValueDescriptor(descriptors, name, null);
+        ValueDescriptor v = getValueDescriptor(name, null);
         Timestamp ts = v.getAnnotation(Timestamp.class);
         if (ts != null) {
             if (timestamp == Long.MIN_VALUE) {
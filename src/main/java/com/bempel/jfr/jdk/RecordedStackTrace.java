@@ -25,9 +25,6 @@
 
 package com.bempel.jfr.jdk;
 
-import jdk.jfr.ValueDescriptor;
-import jdk.jfr.internal.Type;
-
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -39,17 +36,22 @@ import java.util.List;
  */
 public final class RecordedStackTrace extends RecordedObject {
 
-    static ObjectFactory<RecordedStackTrace> createFactory(Type type, TimeConverter timeConverter) {
-        return new ObjectFactory<RecordedStackTrace>(type) {
+    // fields read by the typed getters, see ObjectFactory.typedFields
+    static final String[] TYPED_FIELDS = { "frames", "truncated" };
+    private static final int FRAMES = 0;
+    private static final int TRUNCATED = 1;
+
+    static ObjectFactory<RecordedStackTrace> createFactory(FieldIndex fieldIndex, TimeConverter timeConverter) {
+        return new ObjectFactory<RecordedStackTrace>(fieldIndex) {
             @Override
-            RecordedStackTrace createTyped(List<ValueDescriptor> desc, long id, Object[] object) {
-                return new RecordedStackTrace(desc, object, timeConverter);
+            RecordedStackTrace createTyped(FieldIndex fieldIndex, long id, Object[] object) {
+                return new RecordedStackTrace(fieldIndex, object, timeConverter);
             }
         };
     }
 
-    private RecordedStackTrace(List<ValueDescriptor> desc, Object[] values, TimeConverter timeConverter) {
-        super(desc, values, timeConverter);
+    private RecordedStackTrace(FieldIndex fieldIndex, Object[] values, TimeConverter timeConverter) {
+        super(fieldIndex, values, timeConverter);
     }
 
     /**
@@ -59,7 +61,7 @@ public final class RecordedStackTrace extends RecordedObject {
      */
     @SuppressWarnings("unchecked")
     public List<RecordedFrame> getFrames() {
-        Object[] array = getTyped("frames", Object[].class, null);
+        Object[] array = getTyped(FRAMES, Object[].class, null);
         if (array == null) {
             return Collections.EMPTY_LIST;
         }
@@ -75,6 +77,6 @@ public final class RecordedStackTrace extends RecordedObject {
      *         otherwise
      */
     public boolean isTruncated() {
-        return getTyped("truncated", Boolean.class, true);
+        return getTyped(TRUNCATED, Boolean.class, true);
     }
 }
@@ -25,11 +25,6 @@
 
 package com.bempel.jfr.jdk;
 
-import jdk.jfr.ValueDescriptor;
-import jdk.jfr.internal.Type;
-
-import java.util.List;
-
 /**
  * A recorded thread.
  *
@@ -37,19 +32,27 @@ import java.util.List;
  */
 public final class RecordedThread extends RecordedObject {
 
-    static ObjectFactory<RecordedThread> createFactory(Type type, TimeConverter timeConverter) {
-        return new ObjectFactory<RecordedThread>(type) {
+    // fields read by the typed getters, see ObjectFactory.typedFields
+    static final String[] TYPED_FIELDS = { "osName", "osThreadId", "group", "javaName", "javaThreadId" };
+    private static final int OS_NAME = 0;
+    private static final int OS_THREAD_ID = 1;
+    private static final int GROUP = 2;
+    private static final int JAVA_NAME = 3;
+    private static final int JAVA_THREAD_ID = 4;
+
+    static ObjectFactory<RecordedThread> createFactory(FieldIndex fieldIndex, TimeConverter timeConverter) {
+        return new ObjectFactory<RecordedThread>(fieldIndex) {
             @Override
-            RecordedThread createTyped(List<ValueDescriptor> desc, long id, Object[] object) {
-                return new RecordedThread(desc, id, object, timeConverter);
+            RecordedThread createTyped(FieldIndex fieldIndex, long id, Object[] object) {
+                return new RecordedThread(fieldIndex, id, object, timeConverter);
             }
         };
     }
 
     private final long uniqueId;
 
-    private RecordedThread(List<ValueDescriptor> descriptors, long id, Object[] values,  TimeConverter timeConverter) {
-        super(descriptors, values, timeConverter);
+    private RecordedThread(FieldIndex fieldIndex, long id, Object[] values,  TimeConverter timeConverter) {
+        super(fieldIndex, values, timeConverter);
         this.uniqueId = id;
     }
 
@@ -59,7 +62,7 @@ public final class RecordedThread extends RecordedObject {
      * @return the OS thread name, or {@code null} if doesn't exist
      */
     public String getOSName() {
-        return getTyped("osName", String.class, null);
+        return getTyped(OS_NAME, String.class, null);
     }
 
     /**
@@ -68,7 +71,7 @@ public final class RecordedThread extends RecordedObject {
      * @return The Java thread ID, or {@code -1} if doesn't exist
      */
     public long getOSThreadId() {
-        Long l = getTyped("osThreadId", Long.class, -1L);
+        Long l = getTyped(OS_THREAD_ID, Long.class, -1L);
         return l.longValue();
     }
 
@@ -78,7 +81,7 @@ public final class RecordedThread extends RecordedObject {
      * @return the thread group, or {@code null} if doesn't exist
      */
     public RecordedThreadGroup getThreadGroup() {
-        return getTyped("group", RecordedThreadGroup.class, null);
+        return getTyped(GROUP, RecordedThreadGroup.class, null);
     }
 
     /**
@@ -90,7 +93,7 @@ public final class RecordedThread extends RecordedObject {
      * @return the Java thread name, or {@code null} if doesn't exist
      */
     public String getJavaName() {
-        return getTyped("javaName", String.class, null);
+        return getTyped(JAVA_NAME, String.class, null);
     }
 
     /**
@@ -99,7 +102,7 @@ public final class RecordedThread extends RecordedObject {
      * @return the Java thread ID, or {@code -1} if it's not a Java thread
      */
     public long getJavaThreadId() {
-        Long l = getTyped("javaThreadId", Long.class, -1L);
+        Long l = getTyped(JAVA_THREAD_ID, Long.class, -1L);
         return l.longValue();
     }
 
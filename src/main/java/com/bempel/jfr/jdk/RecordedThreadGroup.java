@@ -25,11 +25,6 @@
 
 package com.bempel.jfr.jdk;
 
-import jdk.jfr.ValueDescriptor;
-import jdk.jfr.internal.Type;
-
-import java.util.List;
-
 /**
  * A recorded Java thread group.
  *
@@ -37,17 +32,22 @@ import java.util.List;
  */
 public final class RecordedThreadGroup extends RecordedObject {
 
-    static ObjectFactory<RecordedThreadGroup> createFactory(Type type, TimeConverter timeConverter) {
-        return new ObjectFactory<RecordedThreadGroup>(type) {
+    // fields read by the typed getters, see ObjectFactory.typedFields
+    static final String[] TYPED_FIELDS = { "name", "parent" };
+    private static final int NAME = 0;
+    private static final int PARENT = 1;
+
+    static ObjectFactory<RecordedThreadGroup> createFactory(FieldIndex fieldIndex, TimeConverter timeConverter) {
+        return new ObjectFactory<RecordedThreadGroup>(fieldIndex) {
             @Override
-            RecordedThreadGroup createTyped(List<ValueDescriptor> desc, long id, Object[] object) {
-                return new RecordedThreadGroup(desc, object, timeConverter);
+            RecordedThreadGroup createTyped(FieldIndex fieldIndex, long id, Object[] object) {
+                return new RecordedThreadGroup(fieldIndex, object, timeConverter);
             }
         };
     }
 
-    private RecordedThreadGroup(List<ValueDescriptor> descriptors, Object[] objects, TimeConverter timeConverter) {
-        super(descriptors, objects, timeConverter);
+    private RecordedThreadGroup(FieldIndex fieldIndex, Object[] objects, TimeConverter timeConverter) {
+        super(fieldIndex, objects, timeConverter);
     }
 
     /**
@@ -56,7 +56,7 @@ public final class RecordedThreadGroup extends RecordedObject {
      * @return the thread group name, or {@code null} if doesn't exist
      */
     public String getName() {
-        return getTyped("name", String.class, null);
+        return getTyped(NAME, String.class, null);
     }
 
     /**
@@ -65,6 +65,6 @@ public final class RecordedThreadGroup extends RecordedObject {
      * @return parent thread group, or {@code null} if it doesn't exist.
      */
     public RecordedThreadGroup getParent() {
-        return getTyped("parent", RecordedThreadGroup.class, null);
+        return getTyped(PARENT, RecordedThreadGroup.class, null);
     }
 }
@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2016, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+
+package com.bempel.jfr.jdk;
+
+import jdk.jfr.internal.consumer.ChunkHeader;
+import jdk.jfr.internal.consumer.RecordingInput;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the events of a recording file one at a time, reusing the same
+ * {@link RecordedEvent} for all the events of a type.
+ * <p>
+ * The values of an event are decoded in place, primitive values are not
+ * boxed, and constants are references to the entries of the constant pools,
+ * so reading events of types without inline strings or structs allocates
+ * nothing per event. The event returned by {@link #event()} is only valid
+ * until the next call to {@link #next()}; events, or values, that are kept
+ * have to be copied out, for instance with {@link #copyEvent()}.
+ * <p>
+ * The following example shows how to sum the sizes of the allocations of a
+ * recording.
+ *
+ * <pre>
+ * <code>
+ * try (RecordingCursor cursor = new RecordingCursor(Paths.get("recording.jfr"))) {
+ *   LongFieldAccessor size = null;
+ *   long total = 0;
+ *   while (cursor.next()) {
+ *     RecordedEvent event = cursor.event();
+ *     if (event.getEventType().getName().equals("jdk.ObjectAllocationSample")) {
+ *       if (size == null) {
+ *         size = RecordingFile.longAccessor(event.getEventType(), "weight");
+ *       }
+ *       total += size.getLong(event);
+ *     }
+ *   }
+ * }
+ * </code>
+ * </pre>
+ *
+ * @see RecordingFile#readEvent()
+ */
+public final class RecordingCursor implements Closeable {
+    static {
+        // RecordingInternals.INSTANCE, needed to print events, is only set
+        // when RecordingFile is initialized
+        try {
+            Class.forName(RecordingFile.class.getName(), true, RecordingCursor.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            throw new InternalError(e);
+        }
+    }
+
+    private final ParserConfiguration configuration;
+    private final ParserCache parserCache;
+    private final ConstantInterner interner;
+    private RecordingInput input;
+    private FileChannel channel;
+    private ChunkParser chunkParser;
+    private RecordedEvent event;
+    private boolean eof;
+
+    /**
+     * Creates a cursor on a recording file.
+     *
+     * @param file the path of the file to open, not {@code null}
+     * @throws IOException if it's not a valid recording file, or an I/O error
+     *         occurred
+     * @throws NoSuchFileException if the {@code file} can't be located
+     *
+     * @throws SecurityException if a security manager exists and its
+     *         {@code checkRead} method denies read access to the file.
+     */
+    public RecordingCursor(Path file) throws IOException {
+        this(file, new ParserConfiguration());
+    }
+
+    /**
+     * Creates a cursor on a recording file parsed according to a
+     * configuration.
+     * <p>
+     * Chunks are read one after the other as events are consumed, the
+     * parallelism and the retained chunks of the configuration are not used.
+     *
+     * @param file the path of the file to open, not {@code null}
+     * @param configuration how to parse the file, not {@code null}
+     * @throws IOException if it's not a valid recording file, or an I/O error
+     *         occurred
+     * @throws NoSuchFileException if the {@code file} can't be located
+     * @throws IllegalArgumentException if the configuration only reads
+     *         constant pools
+     *
+     * @throws SecurityException if a security manager exists and its
+     *         {@code checkRead} method denies read access to the file.
+     */
+    public RecordingCursor(Path file, ParserConfiguration configuration) throws IOException {
+        if (configuration.isConstantPoolsOnly()) {
+            throw new IllegalArgumentException("A cursor can't read a recording file for its constant pools only");
+        }
+        File f = file.toFile();
+        this.configuration = configuration;
+        this.parserCache = new ParserCache(configuration);
+        this.interner = configuration.isInternConstantPools() ? new ConstantInterner() : null;
+        this.input = new RecordingInput(f);
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    /**
+     * Moves to the next event of the recording.
+     *
+     * @return {@code true} if the cursor is on an event, {@code false} if
+     *         no more events exist in the recording
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public boolean next() throws IOException {
+        ensureOpen();
+        event = null;
+        while (!eof) {
+            if (chunkParser == null) {
+                nextChunk(new ChunkParser(new ChunkHeader(input), channel, configuration, parserCache, interner));
+            }
+            event = chunkParser.readEvent(true);
+            if (event != null) {
+                return true;
+            }
+            if (chunkParser.isLastChunk()) {
+                eof = true;
+            } else {
+                nextChunk(chunkParser.nextChunkParser());
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the event the cursor is on.
+     * <p>
+     * The returned instance is reused, and its values replaced, by the next
+     * events of the same type.
+     *
+     * @return the event, not {@code null}
+     *
+     * @throws IllegalStateException if the cursor is not on an event
+     *
+     * @see #copyEvent()
+     */
+    public RecordedEvent event() {
+        if (event == null) {
+            throw new IllegalStateException("No current event, next() must return true first");
+        }
+        return event;
+    }
+
+    /**
+     * Returns a copy of the event the cursor is on, that stays the same when
+     * the cursor moves.
+     *
+     * @return the event, not {@code null}
+     *
+     * @throws IllegalStateException if the cursor is not on an event
+     */
+    public RecordedEvent copyEvent() {
+        return event().copy();
+    }
+
+    /**
+     * Returns the chunk of the event the cursor is on.
+     *
+     * @return the chunk, or {@code null} if no event has been read
+     */
+    public ChunkParser getChunk() {
+        return chunkParser;
+    }
+
+    /**
+     * Closes this cursor and releases any system resources that are
+     * associated with it.
+     *
+     * @throws IOException if an I/O error occurred
+     */
+    @Override
+    public void close() throws IOException {
+        if (input != null) {
+            eof = true;
+            input.close();
+            channel.close();
+            chunkParser = null;
+            event = null;
+            input = null;
+            channel = null;
+        }
+    }
+
+    private void nextChunk(ChunkParser parser) throws IOException {
+        chunkParser = parser;
+        ChunkListener listener = configuration.getChunkListener();
+        if (listener != null) {
+            listener.chunkRead(chunkParser);
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (input == null) {
+            throw new IOException("Stream Closed");
+        }
+    }
+}
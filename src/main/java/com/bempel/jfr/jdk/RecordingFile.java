@@ -35,14 +35,20 @@ import java.io.Closeable;
 import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * A recording file.
@@ -85,13 +91,127 @@ public final class RecordingFile implements Closeable {
         };
     }
 
+    // events of a batch parsed ahead of the reader, in parallel mode
+    private static final int PARSED_BATCH_SIZE = 10_000;
+    // batches parsed ahead of the reader per chunk, in parallel mode
+    private static final int PARSED_BATCHES_PER_CHUNK = 2;
+
+    // The next events of a chunk, at most PARSED_BATCH_SIZE, so that chunks
+    // parsed in parallel are handed to the reader without keeping all their
+    // events in memory
+    private static final class ParsedBatch {
+        private final ChunkParser parser;
+        private final List<RecordedEvent> events = new ArrayList<>();
+        private final boolean last;
+
+        ParsedBatch(ChunkParser parser) throws IOException {
+            this.parser = parser;
+            RecordedEvent event = null;
+            while (events.size() < PARSED_BATCH_SIZE && (event = parser.readEvent()) != null) {
+                events.add(event);
+            }
+            this.last = event == null;
+        }
+    }
+
+    // A chunk of the window parsed in parallel. One task at a time parses a
+    // batch of the chunk and submits the next one itself, until
+    // PARSED_BATCHES_PER_CHUNK batches wait for the reader, so that all the
+    // chunks of the window keep parsing with a bounded number of events
+    private final class ParsingChunk {
+        private final ForkJoinPool pool;
+        private final ChunkHeader header;
+        private final FileChannel fileChannel;
+        private final ArrayDeque<ParsedBatch> batches = new ArrayDeque<>();
+        // only accessed by the task parsing the chunk
+        private ChunkParser parser;
+        private boolean parsing;
+        private boolean parsed;
+        private Throwable failure;
+
+        ParsingChunk(ForkJoinPool pool, ChunkHeader header, FileChannel fileChannel) {
+            this.pool = pool;
+            this.header = header;
+            this.fileChannel = fileChannel;
+        }
+
+        // Submits the parsing of the next batch if the chunk has room for it
+        synchronized void parseAhead() {
+            parsing = !parsed && failure == null && batches.size() < PARSED_BATCHES_PER_CHUNK && !pool.isShutdown();
+            if (parsing) {
+                pool.execute(this::parseBatch);
+            }
+        }
+
+        // Waits for the next batch of the chunk
+        synchronized ParsedBatch take() throws IOException {
+            while (batches.isEmpty()) {
+                if (failure instanceof IOException) {
+                    throw new IOException(failure.getMessage(), failure);
+                }
+                if (failure instanceof RuntimeException) {
+                    throw (RuntimeException) failure;
+                }
+                if (failure != null) {
+                    throw (Error) failure;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for a chunk parsed in parallel");
+                }
+            }
+            ParsedBatch batch = batches.poll();
+            if (!parsing) {
+                parseAhead();
+            }
+            return batch;
+        }
+
+        private void parseBatch() {
+            ParsedBatch batch;
+            try {
+                if (parser == null) {
+                    parser = new ChunkParser(header, fileChannel, configuration, parserCache, interner);
+                }
+                batch = new ParsedBatch(parser);
+            } catch (Throwable t) {
+                synchronized (this) {
+                    failure = t;
+                    parsing = false;
+                    notifyAll();
+                }
+                return;
+            }
+            synchronized (this) {
+                batches.add(batch);
+                parsed = batch.last;
+                notifyAll();
+                parseAhead();
+            }
+        }
+    }
+
     private boolean isLastEventInChunk;
     private final File file;
+    private final ParserConfiguration configuration;
+    private final ParserCache parserCache;
+    private final ConstantInterner interner;
     private RecordingInput input;
+    private FileChannel channel;
     private ChunkParser chunkParser;
     private RecordedEvent nextEvent;
     private boolean eof;
+    // the last chunks read, see ParserConfiguration.setRetainedChunks()
     private List<ChunkParser> chunks = new ArrayList<>();
+    // parallel mode only
+    private ForkJoinPool parsingPool;
+    private ArrayDeque<ChunkHeader> unparsedChunks;
+    // the chunks of the window, in file order
+    private ArrayDeque<ParsingChunk> parsingChunks;
+    private Iterator<RecordedEvent> chunkEvents;
+    private boolean lastBatch;
 
     /**
      * Creates a recording file.
@@ -105,15 +225,64 @@ public final class RecordingFile implements Closeable {
      *         {@code checkRead} method denies read access to the file.
      */
     public RecordingFile(Path file) throws IOException {
+        this(file, new ParserConfiguration());
+    }
+
+    /**
+     * Creates a recording file parsed according to a configuration.
+     *
+     * @param file the path of the file to open, not {@code null}
+     * @param configuration how to parse the file, not {@code null}
+     * @throws IOException if it's not a valid recording file, or an I/O error
+     *         occurred
+     * @throws NoSuchFileException if the {@code file} can't be located
+     *
+     * @throws SecurityException if a security manager exists and its
+     *         {@code checkRead} method denies read access to the file.
+     */
+    public RecordingFile(Path file, ParserConfiguration configuration) throws IOException {
         this.file = file.toFile();
+        this.configuration = configuration;
+        this.parserCache = new ParserCache(configuration);
+        this.interner = configuration.isInternConstantPools() ? new ConstantInterner() : null;
         this.input = new RecordingInput(this.file);
-        findNext();
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        if (configuration.getParallelism() > 1) {
+            startParallelParsing(configuration.getParallelism());
+        }
+        if (configuration.isConstantPoolsOnly()) {
+            eof = true; // no events, chunks are read with readChunk()
+        } else {
+            findNext();
+        }
     }
 
+    /**
+     * Returns the chunks read so far, at most the last
+     * {@link ParserConfiguration#setRetainedChunks(int)} ones.
+     *
+     * @return the chunks in file order, not {@code null}
+     */
     public List<ChunkParser> getChunks() {
         return chunks;
     }
 
+    /**
+     * Returns the recording-wide id of an interned constant, see
+     * {@link ParserConfiguration#setInternConstantPools(boolean)}.
+     * <p>
+     * Ids are sequential per constant pool type and stay the same for every
+     * chunk of the recording, they can be used to aggregate methods, classes
+     * or stack traces across chunks.
+     *
+     * @param value a method, class, symbol or stack trace read from this
+     *        recording
+     * @return the id, or {@code -1} if the value is not interned
+     */
+    public long getInternedId(Object value) {
+        return interner == null ? -1 : interner.getId(value);
+    }
+
     /**
      * Reads the next event in the recording.
      *
@@ -131,7 +300,7 @@ public final class RecordingFile implements Closeable {
         }
         isLastEventInChunk = false;
         RecordedEvent event = nextEvent;
-        nextEvent = chunkParser.readEvent();
+        nextEvent = readChunkEvent();
         if (nextEvent == null) {
             isLastEventInChunk = true;
             findNext();
@@ -139,6 +308,86 @@ public final class RecordingFile implements Closeable {
         return event;
     }
 
+    /**
+     * Reads what has been flushed to the recording file since it was opened
+     * or last refreshed, when the last chunk is still being written, for
+     * instance a file of the repository of a running JVM.
+     * <p>
+     * New constant pool entries are added to the pools of the chunk, and the
+     * events written after the last one read can then be read with
+     * {@link #readEvent()}.
+     *
+     * @return {@code true} if unread events exist in the recording,
+     *         {@code false} otherwise.
+     *
+     * @throws IOException if an I/O error occurs.
+     * @throws IllegalStateException if chunks are parsed in parallel
+     *
+     * @see ChunkParser#isFinished()
+     */
+    public boolean refresh() throws IOException {
+        ensureOpen();
+        if (parsingPool != null) {
+            throw new IllegalStateException("Recording files parsed in parallel can't be refreshed");
+        }
+        if (chunkParser != null && chunkParser.refresh(file) && nextEvent == null && !configuration.isConstantPoolsOnly()) {
+            nextEvent = chunkParser.readEvent();
+            eof = nextEvent == null;
+        }
+        return !eof;
+    }
+
+    /**
+     * Returns {@code true} if unread chunks exist in a recording file opened
+     * with {@link ParserConfiguration#setConstantPoolsOnly(boolean)},
+     * {@code false} otherwise.
+     *
+     * @return {@code true} if unread chunks exist in the recording,
+     *         {@code false} otherwise.
+     */
+    public boolean hasMoreChunks() {
+        if (input == null || !configuration.isConstantPoolsOnly()) {
+            return false;
+        }
+        if (parsingPool != null) {
+            return !parsingChunks.isEmpty();
+        }
+        return chunkParser == null || !chunkParser.isLastChunk();
+    }
+
+    /**
+     * Reads the metadata and constant pools of the next chunk, in a
+     * recording file opened with
+     * {@link ParserConfiguration#setConstantPoolsOnly(boolean)}.
+     *
+     * @return the next chunk, not {@code null}
+     *
+     * @throws EOFException if no more chunks exist in the recording file
+     * @throws IOException if an I/O error occurs.
+     * @throws IllegalStateException if the file is not read for its constant
+     *         pools only
+     *
+     * @see #hasMoreChunks()
+     */
+    public ChunkParser readChunk() throws IOException {
+        if (!configuration.isConstantPoolsOnly()) {
+            throw new IllegalStateException("Chunks can only be read when constant pools only are parsed");
+        }
+        if (!hasMoreChunks()) {
+            ensureOpen();
+            throw new EOFException();
+        }
+        if (parsingPool != null) {
+            chunkParser = joinBatch().parser;
+        } else if (chunkParser == null) {
+            chunkParser = new ChunkParser(new ChunkHeader(input), channel, configuration, parserCache, interner);
+        } else {
+            chunkParser = chunkParser.nextChunkParser();
+        }
+        addChunk();
+        return chunkParser;
+    }
+
     /**
      * Returns {@code true} if unread events exist in the recording file,
      * {@code false} otherwise.
@@ -218,8 +467,17 @@ public final class RecordingFile implements Closeable {
         if (input != null) {
             eof = true;
             input.close();
+            // chunks already mapped stay readable after the channel is closed
+            channel.close();
+            if (parsingPool != null) {
+                parsingPool.shutdownNow();
+                parsingPool = null;
+                parsingChunks.clear();
+                chunkEvents = null;
+            }
             chunkParser = null;
             input = null;
+            channel = null;
             nextEvent = null;
         }
     }
@@ -252,21 +510,215 @@ public final class RecordingFile implements Closeable {
         }
     }
 
+    /**
+     * Returns an accessor to the value of a field of the events of a type.
+     * <p>
+     * The field is resolved once per metadata instead of on every call, which
+     * makes reading the same fields of many events cheaper than
+     * {@link RecordedObject#getValue(String)}.
+     *
+     * @param <T> the type of the value
+     * @param eventType the type of the events, not {@code null}
+     * @param path the name of the field, dot {@code "."} delimited for a
+     *        nested field, not {@code null}
+     *
+     * @return the accessor, not {@code null}
+     *
+     * @throws IllegalArgumentException if the event type has no such field
+     */
+    public static <T> FieldAccessor<T> accessor(EventType eventType, String path) {
+        return new FieldAccessor<>(eventType, path);
+    }
+
+    /**
+     * Returns an accessor to the value of an integral field of the events of
+     * a type, read without boxing.
+     *
+     * @param eventType the type of the events, not {@code null}
+     * @param path the name of the field, dot {@code "."} delimited for a
+     *        nested field, not {@code null}
+     *
+     * @return the accessor, not {@code null}
+     *
+     * @throws IllegalArgumentException if the event type has no such field,
+     *         or it can't be read as a {@code long}
+     *
+     * @see RecordedObject#getLong(String)
+     */
+    public static LongFieldAccessor longAccessor(EventType eventType, String path) {
+        return new LongFieldAccessor(eventType, path);
+    }
+
+    /**
+     * Returns an accessor to the value of a numeric field of the events of a
+     * type, read without boxing.
+     *
+     * @param eventType the type of the events, not {@code null}
+     * @param path the name of the field, dot {@code "."} delimited for a
+     *        nested field, not {@code null}
+     *
+     * @return the accessor, not {@code null}
+     *
+     * @throws IllegalArgumentException if the event type has no such field,
+     *         or it can't be read as a {@code double}
+     *
+     * @see RecordedObject#getDouble(String)
+     */
+    public static DoubleFieldAccessor doubleAccessor(EventType eventType, String path) {
+        return new DoubleFieldAccessor(eventType, path);
+    }
+
+    /**
+     * Returns the chunks of a file, read from their headers only.
+     * <p>
+     * Neither metadata nor constant pools are parsed, which makes this a cheap
+     * way to learn the layout and time span of a large recording before
+     * parsing it.
+     *
+     * @param path the path to the file, not {@code null}
+     *
+     * @return the chunks in file order, not {@code null}
+     *
+     * @throws IOException if an I/O error occurred, or it's not a Flight
+     *         Recorder file
+     *
+     * @throws SecurityException if a security manager exists and its
+     *         {@code checkRead} method denies read access to the file.
+     */
+    public static List<ChunkInfo> readChunkDirectory(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return ChunkInfo.readAll(channel);
+        }
+    }
+
+    /**
+     * Returns the number of events and bytes per event type of each chunk of
+     * a file.
+     * <p>
+     * Only the size and type id of events are read, their fields are skipped,
+     * so this is a cheap way to learn which event types use the space of a
+     * large recording.
+     *
+     * @param path the path to the file, not {@code null}
+     *
+     * @return the chunks in file order, not {@code null}
+     *
+     * @throws IOException if an I/O error occurred, or it's not a Flight
+     *         Recorder file
+     *
+     * @throws SecurityException if a security manager exists and its
+     *         {@code checkRead} method denies read access to the file.
+     */
+    public static List<ChunkSummary> readSummary(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+             RecordingInput recording = new RecordingInput(path.toFile())) {
+            return ChunkSummary.readAll(channel, recording);
+        }
+    }
+
     // either sets next to an event or sets eof to true
     private void findNext() throws IOException {
         while (nextEvent == null) {
-            if (chunkParser == null) {
-                chunkParser = new ChunkParser(input);
-                chunks.add(chunkParser);
+            if (parsingPool != null) {
+                if (parsingChunks.isEmpty()) {
+                    eof = true;
+                    return;
+                }
+                ParsedBatch batch = joinBatch();
+                chunkParser = batch.parser;
+                chunkEvents = batch.events.iterator();
+                lastBatch = batch.last;
+                addChunk();
+            } else if (chunkParser == null) {
+                chunkParser = new ChunkParser(new ChunkHeader(input), channel, configuration, parserCache, interner);
+                addChunk();
             } else if (!chunkParser.isLastChunk()) {
                 chunkParser = chunkParser.nextChunkParser();
-                chunks.add(chunkParser);
+                addChunk();
             } else {
                 eof = true;
                 return;
             }
-            nextEvent = chunkParser.readEvent();
+            nextEvent = readChunkEvent();
+        }
+    }
+
+    private void addChunk() throws IOException {
+        ChunkListener listener = configuration.getChunkListener();
+        if (listener != null) {
+            listener.chunkRead(chunkParser);
+        }
+        int retained = configuration.getRetainedChunks();
+        if (retained > 0) {
+            if (chunks.size() == retained) {
+                chunks.remove(0);
+            }
+            chunks.add(chunkParser);
+        }
+    }
+
+    private RecordedEvent readChunkEvent() throws IOException {
+        if (chunkEvents != null) {
+            while (!chunkEvents.hasNext()) {
+                if (lastBatch) {
+                    return null;
+                }
+                ParsedBatch batch = joinBatch();
+                chunkEvents = batch.events.iterator();
+                lastBatch = batch.last;
+            }
+            return chunkEvents.next();
+        }
+        return chunkParser.readEvent();
+    }
+
+    // Chunk boundaries are found up front, then a window of chunks is parsed
+    // ahead of the reader, each a few batches of events ahead, so that events
+    // are still consumed in file order
+    private void startParallelParsing(int parallelism) throws IOException {
+        unparsedChunks = new ArrayDeque<>();
+        ChunkHeader header = new ChunkHeader(input);
+        unparsedChunks.add(header);
+        while (!header.isLastChunk()) {
+            header = header.nextHeader();
+            unparsedChunks.add(header);
+        }
+        parsingPool = new ForkJoinPool(parallelism);
+        parsingChunks = new ArrayDeque<>();
+        for (int i = 0; i < 2 * parallelism; i++) {
+            submitNextChunk();
+        }
+    }
+
+    private void submitNextChunk() {
+        ChunkHeader header = unparsedChunks.poll();
+        if (header != null) {
+            ParsingChunk chunk = new ParsingChunk(parsingPool, header, channel);
+            parsingChunks.add(chunk);
+            chunk.parseAhead();
+        }
+    }
+
+    // Takes the next batch of the first chunk of the window. Once its last
+    // batch is taken, the chunk leaves the window and the next chunk of the
+    // file is submitted.
+    private ParsedBatch joinBatch() throws IOException {
+        ParserProfile profile = configuration.getProfile();
+        long startNanos = profile != null ? System.nanoTime() : 0;
+        long startAllocated = profile != null ? profile.allocatedBytes() : 0;
+        ParsedBatch batch;
+        try {
+            batch = parsingChunks.peek().take();
+        } finally {
+            if (profile != null) {
+                profile.record(ParserProfile.Phase.WAIT, startNanos, startAllocated, 0);
+            }
+        }
+        if (batch.last) {
+            parsingChunks.poll();
+            submitNextChunk();
         }
+        return batch;
     }
 
     private void ensureOpen() throws IOException {
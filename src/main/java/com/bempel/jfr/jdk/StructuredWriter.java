@@ -38,6 +38,7 @@ abstract class StructuredWriter {
     private int column;
     // print first event immediately so tool feels responsive
     private boolean first = true;
+    private ParserProfile profile;
 
     StructuredWriter(PrintWriter p) {
         out = p;
@@ -47,20 +48,46 @@ abstract class StructuredWriter {
         return column;
     }
 
+    /**
+     * Sets a profile to fill with the time, characters written and bytes
+     * allocated by this writer, in the {@link ParserProfile.Phase#WRITE}
+     * phase.
+     *
+     * @param profile the profile, or {@code null} to not measure anything
+     */
+    public void setProfile(ParserProfile profile) {
+        this.profile = profile;
+    }
+
+    final protected ParserProfile getProfile() {
+        return profile;
+    }
+
     // Flush to print writer
     public final void flush(boolean hard) {
         if (hard) {
-            out.print(builder.toString());
-            builder.setLength(0);
+            write();
             return;
         }
         if (first || builder.length() > 100_000) {
-            out.print(builder.toString());
-            builder.setLength(0);
+            write();
             first = false;
         }
     }
 
+    private void write() {
+        ParserProfile profile = this.profile;
+        long startNanos = profile != null ? System.nanoTime() : 0;
+        long startAllocated = profile != null ? profile.allocatedBytes() : 0;
+        int length = builder.length();
+        out.print(builder.toString());
+        builder.setLength(0);
+        if (profile != null) {
+            // the bytes of the phase are the characters written
+            profile.record(ParserProfile.Phase.WRITE, 0, startNanos, startAllocated, length);
+        }
+    }
+
     final public void printIndent() {
         builder.append(indentionArray, 0, indent);
         column += indent;
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2016, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.bempel.jfr.jdk;
+
+/**
+ * A symbol of a recording, such as a class name, a method name or a method
+ * descriptor, read with {@link ParserConfiguration#setCompactSymbols(boolean)}.
+ * <p>
+ * Symbols are unique within a recording: two symbols with the same text read
+ * from the same {@link RecordingFile} are the same instance and have the same
+ * handle, whatever the chunk they come from. They can be used as keys without
+ * decoding their text.
+ */
+public final class Symbol {
+    private final SymbolTable table;
+    private final int handle;
+    private final int hash;
+
+    Symbol(SymbolTable table, int handle, int hash) {
+        this.table = table;
+        this.handle = handle;
+        this.hash = hash;
+    }
+
+    /**
+     * Returns the handle of the symbol, an index that is unique within the
+     * recording.
+     *
+     * @return the handle
+     */
+    public int getHandle() {
+        return handle;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Symbol)) {
+            return false;
+        }
+        Symbol that = (Symbol) o;
+        return table == that.table && handle == that.handle;
+    }
+
+    /**
+     * Decodes the text of the symbol.
+     *
+     * @return the text, not {@code null}
+     */
+    @Override
+    public String toString() {
+        return table.getString(handle);
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2016, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.bempel.jfr.jdk;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Symbols of a recording, kept as UTF-8 bytes.
+ * <p>
+ * The bytes of every distinct symbol are appended once to a single arena and
+ * the symbol is identified by its index, its handle. Symbols are compared and
+ * hashed on their bytes, and only decoded when their text is asked for. The
+ * table is shared by all the chunks of a recording, so a handle designates the
+ * same symbol in every chunk.
+ */
+final class SymbolTable {
+    private static final int INITIAL_SYMBOLS = 1024;
+
+    private byte[] arena = new byte[64 * 1024];
+    private int arenaSize;
+    private int[] offsets = new int[INITIAL_SYMBOLS];
+    private int[] lengths = new int[INITIAL_SYMBOLS];
+    private Symbol[] symbols = new Symbol[INITIAL_SYMBOLS];
+    private int count;
+    // handle + 1 of the symbol, 0 for a free slot
+    private int[] table = new int[2 * INITIAL_SYMBOLS];
+
+    /**
+     * Reads a UTF-8 or Latin-1 byte array of the given size at the position
+     * of the input.
+     */
+    synchronized Symbol add(ChunkInput input, byte encoding, int length) throws IOException {
+        ensureArena(length);
+        input.readFully(arena, arenaSize, length);
+        if (encoding == ChunkInput.STRING_ENCODING_LATIN1_BYTE_ARRAY) {
+            for (int i = arenaSize; i < arenaSize + length; i++) {
+                if (arena[i] < 0) {
+                    // not ASCII, Latin-1 and UTF-8 bytes differ
+                    return add(new String(arena, arenaSize, length, StandardCharsets.ISO_8859_1));
+                }
+            }
+        }
+        return add(length);
+    }
+
+    synchronized Symbol add(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        ensureArena(bytes.length);
+        System.arraycopy(bytes, 0, arena, arenaSize, bytes.length);
+        return add(bytes.length);
+    }
+
+    synchronized String getString(int handle) {
+        return new String(arena, offsets[handle], lengths[handle], StandardCharsets.UTF_8);
+    }
+
+    synchronized int size() {
+        return count;
+    }
+
+    // the bytes are at the end of the arena, they are kept only if the
+    // symbol is new
+    private Symbol add(int length) {
+        int hash = hash(arenaSize, length);
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        int index;
+        while ((index = table[slot]) != 0) {
+            Symbol symbol = symbols[index - 1];
+            if (symbol.hashCode() == hash && matches(index - 1, length)) {
+                return symbol;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (count == symbols.length) {
+            grow();
+            mask = table.length - 1;
+            slot = hash & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+        }
+        Symbol symbol = new Symbol(this, count, hash);
+        offsets[count] = arenaSize;
+        lengths[count] = length;
+        symbols[count] = symbol;
+        table[slot] = ++count;
+        arenaSize += length;
+        return symbol;
+    }
+
+    private boolean matches(int handle, int length) {
+        if (lengths[handle] != length) {
+            return false;
+        }
+        int offset = offsets[handle];
+        for (int i = 0; i < length; i++) {
+            if (arena[offset + i] != arena[arenaSize + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int hash(int offset, int length) {
+        int h = 0;
+        for (int i = offset; i < offset + length; i++) {
+            h = 31 * h + arena[i];
+        }
+        // spread the low bits used by the table
+        return h ^ (h >>> 16);
+    }
+
+    private void ensureArena(int length) {
+        if (length > arena.length - arenaSize) {
+            long size = Math.max(2L * arena.length, (long) arenaSize + length);
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("Symbol table can't hold more than 2 GB");
+            }
+            arena = Arrays.copyOf(arena, (int) size);
+        }
+    }
+
+    private void grow() {
+        int capacity = 2 * symbols.length;
+        offsets = Arrays.copyOf(offsets, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        symbols = Arrays.copyOf(symbols, capacity);
+        table = new int[2 * capacity];
+        int mask = table.length - 1;
+        for (int i = 0; i < count; i++) {
+            int slot = symbols[i].hashCode() & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = i + 1;
+        }
+    }
+}
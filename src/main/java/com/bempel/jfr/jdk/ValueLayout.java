@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2016, 2018, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+package com.bempel.jfr.jdk;
+
+import jdk.jfr.ValueDescriptor;
+import jdk.jfr.internal.PrivateAccess;
+
+import java.util.List;
+
+/**
+ * Describes where the field values of an event are stored.
+ * <p>
+ * Primitive fields are kept unboxed in a {@code long[]}, the other fields
+ * (strings, constant pool objects, structs and arrays) in an {@code Object[]}.
+ * The entry of a field packs its index in one of the two arrays with the
+ * kind of the value.
+ * <p>
+ * Integral values are stored sign extended, {@code char} as its code unit,
+ * {@code boolean} as 0 or 1, and {@code float} and {@code double} as their
+ * raw bits.
+ */
+final class ValueLayout {
+    static final int OBJECT = 0;
+    static final int BOOLEAN = 1;
+    static final int BYTE = 2;
+    static final int CHAR = 3;
+    static final int SHORT = 4;
+    static final int INT = 5;
+    static final int LONG = 6;
+    static final int FLOAT = 7;
+    static final int DOUBLE = 8;
+
+    private static final int KIND_MASK = 0xF;
+    private static final int UNSIGNED = 0x10;
+    private static final int INDEX_SHIFT = 5;
+
+    private final int[] entries;
+    private final int objectCount;
+    private final int primitiveCount;
+
+    ValueLayout(List<ValueDescriptor> descriptors) {
+        entries = new int[descriptors.size()];
+        int objects = 0;
+        int primitives = 0;
+        int index = 0;
+        for (ValueDescriptor v : descriptors) {
+            int kind = kindOf(v);
+            if (kind == OBJECT) {
+                entries[index++] = objects++ << INDEX_SHIFT;
+            } else {
+                int unsigned = PrivateAccess.getInstance().isUnsigned(v) ? UNSIGNED : 0;
+                entries[index++] = primitives++ << INDEX_SHIFT | unsigned | kind;
+            }
+        }
+        this.objectCount = objects;
+        this.primitiveCount = primitives;
+    }
+
+    private static int kindOf(ValueDescriptor v) {
+        if (v.isArray() || !v.getFields().isEmpty() || PrivateAccess.getInstance().isConstantPool(v)) {
+            return OBJECT;
+        }
+        switch (v.getTypeName()) {
+        case "boolean":
+            return BOOLEAN;
+        case "byte":
+            return BYTE;
+        case "char":
+            return CHAR;
+        case "short":
+            return SHORT;
+        case "int":
+            return INT;
+        case "long":
+            return LONG;
+        case "float":
+            return FLOAT;
+        case "double":
+            return DOUBLE;
+        default:
+            return OBJECT;
+        }
+    }
+
+    int entry(int field) {
+        return entries[field];
+    }
+
+    int objectCount() {
+        return objectCount;
+    }
+
+    int primitiveCount() {
+        return primitiveCount;
+    }
+
+    static int kind(int entry) {
+        return entry & KIND_MASK;
+    }
+
+    static int index(int entry) {
+        return entry >>> INDEX_SHIFT;
+    }
+
+    static boolean isPrimitive(int entry) {
+        return (entry & KIND_MASK) != OBJECT;
+    }
+
+    // integral value widened to a long, zero extended if the field
+    // is @Unsigned and that is asked for
+    static long widen(int entry, long bits, boolean allowUnsigned) {
+        if (allowUnsigned && (entry & UNSIGNED) != 0) {
+            switch (entry & KIND_MASK) {
+            case BYTE:
+                return bits & 0xFFL;
+            case SHORT:
+                return bits & 0xFFFFL;
+            case INT:
+                return bits & 0xFFFFFFFFL;
+            }
+        }
+        return bits;
+    }
+
+    static Object box(int entry, long bits) {
+        switch (entry & KIND_MASK) {
+        case BOOLEAN:
+            return bits != 0 ? Boolean.TRUE : Boolean.FALSE;
+        case BYTE:
+            return Byte.valueOf((byte) bits);
+        case CHAR:
+            return Character.valueOf((char) bits);
+        case SHORT:
+            return Short.valueOf((short) bits);
+        case INT:
+            return Integer.valueOf((int) bits);
+        case LONG:
+            return Long.valueOf(bits);
+        case FLOAT:
+            return Float.valueOf(Float.intBitsToFloat((int) bits));
+        case DOUBLE:
+            return Double.valueOf(Double.longBitsToDouble(bits));
+        default:
+            throw new InternalError("Not a primitive value");
+        }
+    }
+}
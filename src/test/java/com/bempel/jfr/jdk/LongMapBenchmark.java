@@ -0,0 +1,123 @@
+package com.bempel.jfr.jdk;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares the time and the allocated bytes of {@code put} and {@code get}
+ * of {@link LongMap} and of the {@code HashMap<Long, T>} it replaced.
+ * <p>
+ * Keys are either sequential, like the ids of most constant pools, or
+ * random. Run with {@code gradle longMapBenchmark}, or with the class as main
+ * class and the test classpath; arguments are the key count and the number
+ * of rounds, the first half of the rounds being warm up.
+ */
+public class LongMapBenchmark {
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private interface Table {
+        void put(long key, Object value);
+
+        Object get(long key);
+    }
+
+    private static final class LongMapTable implements Table {
+        private final LongMap<Object> map = new LongMap<>();
+
+        @Override
+        public void put(long key, Object value) {
+            map.put(key, value);
+        }
+
+        @Override
+        public Object get(long key) {
+            return map.get(key);
+        }
+    }
+
+    private static final class HashMapTable implements Table {
+        private final Map<Long, Object> map = new HashMap<>();
+
+        @Override
+        public void put(long key, Object value) {
+            map.put(key, value);
+        }
+
+        @Override
+        public Object get(long key) {
+            return map.get(key);
+        }
+    }
+
+    // nanoseconds and bytes per operation of the last measure
+    private static double nanos;
+    private static double bytes;
+    private static long sink;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        long[] sequential = new long[count];
+        long[] random = new long[count];
+        Random r = new Random(42);
+        for (int i = 0; i < count; i++) {
+            sequential[i] = i + 1;
+            random[i] = r.nextLong();
+        }
+        System.out.println("keys map put(ns/op) put(B/op) get(ns/op) get(B/op)");
+        run("sequential", sequential, rounds);
+        run("random", random, rounds);
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    private static void run(String name, long[] keys, int rounds) {
+        double[] longMap = new double[4];
+        double[] hashMap = new double[4];
+        for (int round = 0; round < rounds; round++) {
+            boolean measured = round >= rounds / 2;
+            measure(new LongMapTable(), keys, measured ? longMap : new double[4]);
+            measure(new HashMapTable(), keys, measured ? hashMap : new double[4]);
+        }
+        int measuredRounds = rounds - rounds / 2;
+        print(name, "LongMap", longMap, measuredRounds);
+        print(name, "HashMap<Long, T>", hashMap, measuredRounds);
+    }
+
+    private static void measure(Table table, long[] keys, double[] totals) {
+        Object value = new Object();
+        long threadId = Thread.currentThread().getId();
+        long startBytes = THREADS.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (long key : keys) {
+            table.put(key, value);
+        }
+        record(start, startBytes, keys.length);
+        totals[0] += nanos;
+        totals[1] += bytes;
+        startBytes = THREADS.getThreadAllocatedBytes(threadId);
+        start = System.nanoTime();
+        long found = 0;
+        for (long key : keys) {
+            if (table.get(key) != null) {
+                found++;
+            }
+        }
+        record(start, startBytes, keys.length);
+        totals[2] += nanos;
+        totals[3] += bytes;
+        sink += found;
+    }
+
+    private static void record(long start, long startBytes, int operations) {
+        nanos = (double) (System.nanoTime() - start) / operations;
+        bytes = (double) (THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) - startBytes) / operations;
+    }
+
+    private static void print(String keys, String map, double[] totals, int rounds) {
+        System.out.printf("%s %s %.1f %.1f %.1f %.1f\n", keys, map, totals[0] / rounds, totals[1] / rounds, totals[2] / rounds, totals[3] / rounds);
+    }
+}
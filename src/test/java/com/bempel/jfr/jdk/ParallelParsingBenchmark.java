@@ -0,0 +1,106 @@
+package com.bempel.jfr.jdk;
+
+import jdk.jfr.Event;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Compares the wall time of reading all the events of a recording with a
+ * parallelism of 1 and of N.
+ * <p>
+ * The recording is the first argument, or else a recording of several large
+ * chunks is written to a temporary file: each chunk is a recording of its
+ * own, and chunks are appended one after the other. Run with
+ * {@code gradle parallelParsingBenchmark}, or with the class as main class
+ * and the test classpath; arguments are the recording, or {@code -}, the
+ * parallelism N, the number of rounds, the first half of the rounds being
+ * warm up, then the number of chunks and of events per chunk to write.
+ */
+public class ParallelParsingBenchmark {
+
+    @Name("com.bempel.jfr.BenchmarkSample")
+    static class SampleEvent extends Event {
+        long value;
+        int count;
+        String text;
+    }
+
+    public static void main(String[] args) throws IOException {
+        String source = args.length > 0 ? args[0] : "-";
+        int parallelism = args.length > 1 ? Integer.parseInt(args[1]) : Math.max(2, Runtime.getRuntime().availableProcessors());
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 6;
+        int chunks = args.length > 3 ? Integer.parseInt(args[3]) : 8;
+        int events = args.length > 4 ? Integer.parseInt(args[4]) : 200_000;
+        Path recording = source.equals("-") ? writeRecording(chunks, events) : Paths.get(source);
+        try {
+            System.out.println("recording " + recording + " " + Files.size(recording) + " bytes, "
+                    + Runtime.getRuntime().availableProcessors() + " processors");
+            double sequential = run(recording, 1, rounds);
+            double parallel = run(recording, parallelism, rounds);
+            System.out.printf("speedup %.2f\n", sequential / parallel);
+        } finally {
+            if (source.equals("-")) {
+                Files.delete(recording);
+            }
+        }
+    }
+
+    // average milliseconds to read the recording over the measured rounds
+    private static double run(Path recording, int parallelism, int rounds) throws IOException {
+        long total = 0;
+        long count = 0;
+        for (int round = 0; round < rounds; round++) {
+            ParserConfiguration configuration = new ParserConfiguration();
+            configuration.setParallelism(parallelism);
+            long start = System.nanoTime();
+            long events = 0;
+            try (RecordingFile file = new RecordingFile(recording, configuration)) {
+                while (file.hasMoreEvents()) {
+                    file.readEvent();
+                    events++;
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            if (round >= rounds / 2) {
+                total += elapsed;
+            }
+            count = events;
+        }
+        double millis = total / 1_000_000.0 / (rounds - rounds / 2);
+        System.out.printf("parallelism %d events %,d %.1f ms\n", parallelism, count, millis);
+        return millis;
+    }
+
+    private static Path writeRecording(int chunks, int events) throws IOException {
+        Path recording = Files.createTempFile("parallel-parsing", ".jfr");
+        Path chunk = Files.createTempFile("parallel-parsing-chunk", ".jfr");
+        try (OutputStream out = Files.newOutputStream(recording, StandardOpenOption.APPEND)) {
+            for (int i = 0; i < chunks; i++) {
+                try (Recording r = new Recording()) {
+                    r.enable(SampleEvent.class);
+                    r.start();
+                    for (int j = 0; j < events; j++) {
+                        SampleEvent event = new SampleEvent();
+                        event.value = j;
+                        event.count = i;
+                        event.text = (j & 1) == 0 ? "even" : "odd";
+                        event.commit();
+                    }
+                    r.stop();
+                    r.dump(chunk);
+                }
+                Files.copy(chunk, out);
+            }
+        } finally {
+            Files.delete(chunk);
+        }
+        return recording;
+    }
+}
@@ -0,0 +1,173 @@
+package com.bempel.jfr.jdk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import jdk.jfr.Event;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class RecordingCursorTest {
+    private static final String SAMPLE_EVENT = "com.bempel.jfr.Sample";
+    private static final int EVENT_COUNT = 20_000;
+    // bytes all reused events may allocate, for a stray allocation of the
+    // thread such as a class initialization
+    private static final long ALLOCATION_BUDGET = 16 * 1024;
+
+    @Name(SAMPLE_EVENT)
+    static class SampleEvent extends Event {
+        long value;
+        int count;
+        double ratio;
+        boolean flag;
+    }
+
+    private static Path recording;
+
+    @BeforeAll
+    static void record() throws IOException {
+        recording = Files.createTempFile("cursor", ".jfr");
+        try (Recording r = new Recording()) {
+            r.enable(SampleEvent.class).withoutStackTrace();
+            r.start();
+            for (int i = 0; i < EVENT_COUNT; i++) {
+                SampleEvent event = new SampleEvent();
+                event.value = i;
+                event.count = i % 100;
+                event.ratio = i / 2.0;
+                event.flag = (i & 1) == 0;
+                event.commit();
+            }
+            r.stop();
+            r.dump(recording);
+        }
+    }
+
+    @AfterAll
+    static void delete() throws IOException {
+        Files.deleteIfExists(recording);
+    }
+
+    @Test
+    public void readsSameEventsAsRecordingFile() throws IOException {
+        List<String> expected = new ArrayList<>();
+        try (RecordingFile file = new RecordingFile(recording)) {
+            while (file.hasMoreEvents()) {
+                expected.add(file.readEvent().toString());
+            }
+        }
+        List<RecordedEvent> copies = new ArrayList<>();
+        int index = 0;
+        try (RecordingCursor cursor = new RecordingCursor(recording)) {
+            while (cursor.next()) {
+                assertEquals(expected.get(index), cursor.event().toString());
+                if (index % 100 == 0) {
+                    copies.add(cursor.copyEvent());
+                }
+                index++;
+            }
+        }
+        assertEquals(expected.size(), index);
+        for (int i = 0; i < copies.size(); i++) {
+            assertEquals(expected.get(i * 100), copies.get(i).toString());
+        }
+    }
+
+    @Test
+    public void reusesEventOfType() throws IOException {
+        long count = 0;
+        boolean[] seen = new boolean[EVENT_COUNT];
+        RecordedEvent view = null;
+        ChunkParser viewChunk = null;
+        try (RecordingCursor cursor = new RecordingCursor(recording)) {
+            while (cursor.next()) {
+                RecordedEvent event = cursor.event();
+                if (event.getEventType().getName().equals(SAMPLE_EVENT)) {
+                    if (cursor.getChunk() == viewChunk) {
+                        assertSame(view, event);
+                    }
+                    // buffers are not written in commit order
+                    long value = event.getLong("value");
+                    assertFalse(seen[(int) value]);
+                    seen[(int) value] = true;
+                    assertEquals(value % 100, event.getInt("count"));
+                    assertEquals(value / 2.0, event.getDouble("ratio"));
+                    assertEquals((value & 1) == 0, event.getBoolean("flag"));
+                    view = event;
+                    viewChunk = cursor.getChunk();
+                    count++;
+                }
+            }
+        }
+        assertEquals(EVENT_COUNT, count);
+    }
+
+    @Test
+    public void readsEventsWithoutAllocating() throws IOException {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean, "allocated bytes not available");
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported(), "allocated bytes not supported");
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+        long events = 0;
+        long allocated = 0;
+        try (RecordingCursor cursor = new RecordingCursor(recording)) {
+            RecordedEvent view = null;
+            while (true) {
+                long start = threadBean.getThreadAllocatedBytes(threadId);
+                if (!cursor.next()) {
+                    break;
+                }
+                long end = threadBean.getThreadAllocatedBytes(threadId);
+                RecordedEvent event = cursor.event();
+                // only once the view of the type exists, chunks and views
+                // are allocated once
+                if (event == view) {
+                    events++;
+                    allocated += end - start;
+                }
+                if (event.getEventType().getName().equals(SAMPLE_EVENT)) {
+                    view = event;
+                }
+            }
+        }
+        assertTrue(events > EVENT_COUNT / 2, "too few events read with the same view: " + events);
+        assertTrue(allocated < ALLOCATION_BUDGET, allocated + " bytes allocated for " + events + " events");
+    }
+
+    @Test
+    public void printsEventsWithoutRecordingFile() throws Exception {
+        // a class loader of its own, so RecordingFile is not initialized by
+        // the other tests
+        URL classes = RecordingCursor.class.getProtectionDomain().getCodeSource().getLocation();
+        try (URLClassLoader loader = new URLClassLoader(new URL[] { classes }, ClassLoader.getPlatformClassLoader())) {
+            Class<?> cursorClass = Class.forName(RecordingCursor.class.getName(), true, loader);
+            Method next = cursorClass.getMethod("next");
+            Method event = cursorClass.getMethod("event");
+            try (Closeable cursor = (Closeable) cursorClass.getConstructor(Path.class).newInstance(recording)) {
+                assertTrue((Boolean) next.invoke(cursor));
+                String text = event.invoke(cursor).toString();
+                assertTrue(text.contains("startTime = "), text);
+                assertFalse(cursorClass.getClassLoader() == RecordingCursor.class.getClassLoader());
+            }
+        }
+    }
+}